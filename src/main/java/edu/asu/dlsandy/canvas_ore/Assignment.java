@@ -6,7 +6,11 @@
 
 package edu.asu.dlsandy.canvas_ore;
 
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  *  The representation of a single course assignment as stored in Canvas LMS.
@@ -29,8 +33,7 @@ public class Assignment {
     // group discussions, set group_category_id on the discussion topic, not the
     // linked assignment.
     private final String group_category_id;
-    private static CanvasUserGroups teams = null;
-    private static boolean loadedTeams = false;
+    private CanvasUserGroups teams = null;
     private CanvasQuiz quiz;
 
     final private boolean submission_required;
@@ -57,6 +60,7 @@ public class Assignment {
         if (obj.getValue("submission_types").equals("online_quiz")) {
         	is_quiz = true;
         	quiz_id = obj.getValue("quiz_id");
+        	// the quiz is not loaded from canvas until it is needed
         	quiz = new CanvasQuiz(course_id,quiz_id);
         } else {
         	is_quiz = false;
@@ -116,84 +120,105 @@ public class Assignment {
     public CanvasQuiz getQuiz() {return quiz;}
     
     /**
-     * Load the grades associated with the assignment.  Returns true on success, otherwise false.
+     * Load the grades associated with the assignment.  Submissions are scored while the
+     * next page downloads and, if the assignment is a quiz, the question group scores are
+     * loaded as part of the same operation.  Closing the progress window cancels the loading.
      */
     public void loadGrades() {
-    	final class LoaderThread extends Thread {
-    		public void run() {
-    	        // load the submissions associated with the assignment, including rubric
-    	        // assessments
-                loadingStatus.setStatus(null,"Loading Submissions", -1);
-    	        @SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
-                    CanvasSubmissions submissions = new CanvasSubmissions(course_id,id);
-    	        
-    	        // load the teams
-    	        if (!loadedTeams) {
-                    loadingStatus.setStatus(null,"Loading Team Information", -1);
-    	            if ((group_category_id!=null)&&(!group_category_id.equalsIgnoreCase("null"))) {
-    	                teams = new CanvasUserGroups(course_id);
-    	            }
-    	            loadedTeams = true;
-    	        }
-    	        CanvasUserGroup  team;
+        CanvasEvents.AssignmentGrades event = new CanvasEvents.AssignmentGrades();
+        event.begin();
 
-    	        double pct = 0;
-    	        double step = 1.0/(double)submissions.size();
+    	loadingStatus.setStatus("Loading Results for Assignment: "+name,null,-1);
+        LoadingScope.run(loadingStatus, () -> {
+            // request the submissions associated with the assignment, including rubric
+            // assessments.  Submissions are scored a page at a time while the next
+            // page downloads.
+            loadingStatus.setStatus(null,"Loading Submissions", -1);
+            beginGrades();
 
-    	        // loop through each submission
-    	        for (CanvasSubmission submission:submissions) {
+            try (CanvasPages<CanvasSubmission> submissions = CanvasSubmissions.pages(course_id,id)) {
+                // loop through each submission
+                Iterator<CanvasSubmission> pending = submissions.iterator();
+                while (pending.hasNext()) {
+                    CanvasSubmission submission = pending.next();
+                    double pct = -1;
+                    if (submissions.getPageCount()>0) {
+                        pct = (double)(submissions.getPagesRead()-1)/(double)submissions.getPageCount();
+                    }
                     loadingStatus.setStatus(null,"Processing Scores for Submission : "+submission.getId(), pct);
-    	        	pct = pct+step;
-    	        	
-    	            // ignore submissions that are not the most recently graded
-    	            if (!submission.getGradeMatches()) continue;
-    	            
-    	            // take care of assignment grades
-    	            if ((teams!=null)&&(!grade_group_students_individually)) {
-    	                // if this is a group project, get a list of the students in the group
-    	                // and add grade items for each student in the group
-    	                team = teams.getAssociatedGroup(submission.getUserId());
-    	                if (team!=null) {
-    	                    if ((submission_required)&&(submission.isMissing())) {
-                                grades.put(submission.getUserId(), Double.NaN);
-                            } else {
-                                grades.put(submission.getUserId(), submission.getScore());
-                            }
-    	                    rubric.setRubricScores(submission.getUserId(),submission.getRubricScores());
-    	                }
-    	            } else {
-    	                // otherwise, add a grade item for this student alone
-                        if ((submission_required)&&(submission.isMissing())) {
-                            grades.put(submission.getUserId(), Double.NaN);
-                        } else {
-                            grades.put(submission.getUserId(), submission.getScore());
-                        }
-    	                rubric.setRubricScores(submission.getUserId(),submission.getRubricScores());
-    	            }
-    	        }
-    	            
-                loadingStatus.setStatus(null,null,1.0);
-    		}
-    	}
-    	boolean result = true;
+                    addSubmission(submission);
+                }
+            } catch (UncheckedIOException ex) {
+                Logger.getLogger(Assignment.class.getName()).log(Level.SEVERE, null, ex);
+            }
+
+            finishGrades();
+        });
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.courseId = course_id;
+            event.assignmentId = id;
+            event.assignmentName = name;
+            event.quiz = is_quiz;
+            event.students = grades.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * prepare to score the submissions for the assignment.  Any existing grades are cleared,
+     * the quiz (if any) starts loading in the background and, for a group assignment, the
+     * teams of its group set are loaded.  This is the first step of loadGrades(), and is
+     * also used when the submissions for many assignments are read from a single
+     * course-wide request.
+     */
+    void beginGrades() {
         // clear any existing grades
         grades.clear();
 
-    	loadingStatus.setStatus("Loading Results for Assignment: "+name,null,-1);
-    	ProgressDlg progress = new ProgressDlg(loadingStatus);
-    	LoaderThread loader = new LoaderThread();
-    	loader.start();
-    	progress.showAndWait();
-  
-    	// if the dialog box is closed before loading completes, stop the
-    	// loader thread
-        if (loadingStatus.getPercentDone()<1.0) {
-            loader.interrupt();
+        // the quiz question groups will be needed once the submissions are scored
+        if (is_quiz) quiz.prefetch();
+
+        // load the teams.  Assignments that share a group set share the teams.
+        teams = null;
+        if ((group_category_id!=null)&&(!group_category_id.equalsIgnoreCase("null"))) {
+            loadingStatus.setStatus(null,"Loading Team Information", -1);
+            teams = CanvasTeamCache.get(course_id, group_category_id);
         }
+    }
 
-    	// if the assignment is a quiz, load the question bank specific scores
-        if (is_quiz) quiz.loadGrades(course_id);
+    /**
+     * score a single submission for the assignment, adding the grade and rubric scores
+     * of the student who submitted it
+     *
+     * @param submission - the submission to score
+     */
+    void addSubmission(CanvasSubmission submission) {
+        // ignore submissions that are not the most recently graded
+        if (!submission.getGradeMatches()) return;
+
+        // take care of assignment grades
+        if ((teams!=null)&&(!grade_group_students_individually)) {
+            // if this is a group project, get a list of the students in the group
+            // and add grade items for each student in the group
+            CanvasUserGroup team = teams.getAssociatedGroup(submission.getUserId());
+            if (team==null) return;
+        }
+        if ((submission_required)&&(submission.isMissing())) {
+            grades.put(submission.getUserId(), Double.NaN);
+        } else {
+            grades.put(submission.getUserId(), submission.getScore());
+        }
+        rubric.setRubricScores(submission.getUserId(),submission.getRubricScores());
+    }
 
+    /**
+     * complete loading the grades once every submission has been scored.  If the
+     * assignment is a quiz, the question bank specific scores are loaded.
+     */
+    void finishGrades() {
+        if ((is_quiz)&&(!Thread.currentThread().isInterrupted())) quiz.loadGrades(course_id);
     }
 
     /**
@@ -13,6 +13,9 @@ import java.util.ArrayList;
  *  The representation of an assignment group as stored in the Canvas LMS.
  */
 public class AssignmentGroup {
+    static private final JsonPath DROP_LOWEST = JsonPath.of("rules.drop_lowest");
+    static private final JsonPath DROP_HIGHEST = JsonPath.of("rules.drop_highest");
+
     final String id;
     final String name;
     Assignments assignments;
@@ -28,8 +31,8 @@ public class AssignmentGroup {
         // initialize the AssignmentGroup from the given canvas json object.
         name = obj.getValue("name");
         id = obj.getValue("id");
-        drop_lowest = obj.getInteger("rules.drop_lowest");
-        drop_highest = obj.getInteger("rules.drop_highest");
+        drop_lowest = DROP_LOWEST.getInteger(obj);
+        drop_highest = DROP_HIGHEST.getInteger(obj);
         JsonArray jsonArray = (JsonArray)obj.get("assignments");
         if (jsonArray!=null) assignments = new Assignments(jsonArray,name);
     }        
@@ -8,32 +8,52 @@ package edu.asu.dlsandy.canvas_ore;
 
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.Serial;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  *  The representation of the assignment groups in a course as stored in the Canvas LMS.
  */
-public class AssignmentGroups extends ArrayList<AssignmentGroup> {
+public class AssignmentGroups extends ArrayList<AssignmentGroup> implements ProvidesLoadingStatus {
 	@Serial
     private static final long serialVersionUID = 1L;
     private static final double attainmentThreshold = 0.70;
+    private final transient LoadingStatus loadingStatus = new LoadingStatus();
+    private final String course_id;
+
+    // if the canvas_ore.bulk_submissions system property is true, the submissions for every
+    // assignment are read from the course-wide submissions api rather than one assignment
+    // at a time
+    private static final boolean bulkSubmissions = Boolean.getBoolean("canvas_ore.bulk_submissions");
+
     /**
-     * Constructor for the assignment groups.  Reads the information from Canvas
+     * Constructor for the assignment groups.  Reads the information from Canvas.  The groups
+     * (and the assignments within them) are created concurrently, and added in the order
+     * Canvas lists them.
      * @param course_id - The Canvas LMS course ID to read the assignment groups from
      */
     public AssignmentGroups(String course_id)  {
+        this.course_id = course_id;
         try {
             // perform the request to get the assignment groups information from canvas
         	JsonArray assignmentGroups;
             assignmentGroups = (JsonArray) RequesterSso.apiGetRequest("courses/"+course_id+"/assignment_groups?include[]=assignments");
             if (assignmentGroups != null) {
-                for (JsonAbstractValue obj:assignmentGroups) {
-                    // create and add the courses, configuring them from the canvas request data
-                    AssignmentGroup assignmentGroup = new AssignmentGroup((JsonObject)obj);
-                    add(assignmentGroup);
+                AssignmentGroup[] groups = new AssignmentGroup[assignmentGroups.size()];
+                ArrayList<Integer> indices = new ArrayList<>();
+                for (int i=0; i<assignmentGroups.size(); i++) indices.add(i);
+                loadingStatus.setStatus("Loading Assignment Groups",null,-1);
+                LoadingScope.run(loadingStatus, () -> LoadingScope.forEach(indices, i -> {
+                    // create the group, configuring it from the canvas request data
+                    groups[i] = new AssignmentGroup((JsonObject)assignmentGroups.get(i));
+                }));
+                for (AssignmentGroup assignmentGroup:groups) {
+                    if (assignmentGroup != null) add(assignmentGroup);
                 }
             }
         } catch (IOException ex) {
@@ -42,14 +62,84 @@ public class AssignmentGroups extends ArrayList<AssignmentGroup> {
     }  
     
     /**
-     * Loads the grades for all the assignment groups.
-     * Returns true on success, otherwise false.
+     * Loads the grades for all the assignment groups.  The grades for every assignment in
+     * every group are loaded concurrently while a single progress window displays the
+     * number of assignments completed.  Closing the window cancels the loading.
+     * <p>
+     * If the canvas_ore.bulk_submissions system property is true, the submissions are read
+     * with a few course-wide requests (see loadGradesInBulk()) instead.
      */
     public void loadGrades() {
+        ArrayList<Assignment> assignments = new ArrayList<>();
         for (AssignmentGroup ag:this) {
-            ag.loadGrades();
+            if (ag.getAssignments() != null) assignments.addAll(ag.getAssignments());
+        }
+        if (bulkSubmissions) {
+            loadGradesInBulk(assignments);
+            return;
+        }
+        AtomicInteger loaded = new AtomicInteger();
+        loadingStatus.setStatus("Loading Results for "+assignments.size()+" Assignments",null,0.0);
+        LoadingScope.run(loadingStatus, () -> LoadingScope.forEach(assignments, a -> {
+            a.loadGrades();
+            loadingStatus.setStatus(null,"Loaded Results for Assignment: "+a.getName(),
+                    (double)loaded.incrementAndGet()/(double)assignments.size());
+        }));
+    }
+
+    /**
+     * Loads the grades for the specified assignments from the course-wide submissions api.
+     * Rather than one paginated request per assignment, the submissions of every student for
+     * up to CanvasSubmissions.BULK_BATCH_SIZE assignments arrive in a single stream, and each
+     * submission is scored by the assignment it belongs to.  The batches are read
+     * concurrently.  Once every submission has been scored, the question group scores of the
+     * quizzes are loaded.
+     *
+     * @param assignments - the assignments to load the grades for
+     */
+    private void loadGradesInBulk(ArrayList<Assignment> assignments) {
+        // index the assignments by id and split them into batches
+        HashMap<String,Assignment> byId = new HashMap<>();
+        ArrayList<ArrayList<String>> batches = new ArrayList<>();
+        for (Assignment a:assignments) {
+            byId.put(a.getId(), a);
+            if ((batches.isEmpty()) || (batches.get(batches.size()-1).size() == CanvasSubmissions.BULK_BATCH_SIZE)) {
+                batches.add(new ArrayList<>());
+            }
+            batches.get(batches.size()-1).add(a.getId());
         }
+
+        AtomicInteger scored = new AtomicInteger();
+        loadingStatus.setStatus("Loading Results for "+assignments.size()+" Assignments","Loading Submissions",0.0);
+        LoadingScope.run(loadingStatus, () -> {
+            LoadingScope.forEach(batches, batch -> {
+                for (String id:batch) byId.get(id).beginGrades();
+                try (CanvasPages<CanvasSubmission> submissions = CanvasSubmissions.coursePages(course_id, batch)) {
+                    for (CanvasSubmission submission:submissions) {
+                        Assignment a = byId.get(submission.getAssignmentId());
+                        if (a == null) continue;
+                        a.addSubmission(submission);
+                        loadingStatus.setStatus(null,"Processed "+scored.incrementAndGet()+" Submissions",-1);
+                    }
+                } catch (UncheckedIOException ex) {
+                    Logger.getLogger(AssignmentGroups.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            });
+
+            // load the quiz question group scores
+            ArrayList<Assignment> quizzes = new ArrayList<>();
+            for (Assignment a:assignments) {
+                if (a.isQuiz()) quizzes.add(a);
+            }
+            loadingStatus.setStatus(null,"Loading Results for "+quizzes.size()+" Quizzes",-1);
+            LoadingScope.forEach(quizzes, Assignment::finishGrades);
+        });
     }
+
+    /**
+     * returns the loading status object for this instance
+     */
+    public LoadingStatus getLoadingStatus() {return loadingStatus;}
     
     /**
      * get the outcome points for all assignments for the specified student and outcome. 
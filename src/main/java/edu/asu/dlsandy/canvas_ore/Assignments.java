@@ -10,6 +10,7 @@ package edu.asu.dlsandy.canvas_ore;
 import java.io.IOException;
 import java.io.Serial;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,43 +53,29 @@ public class Assignments extends ArrayList<Assignment> implements ProvidesLoadin
     
     /**
      * Initializes the assignments and loads any additional data from Canvas.  Because this
-     * process can take a long time, a separate loader thread and progress window are used to 
-     * display progress.
+     * process can take a long time, the assignments are created concurrently while a progress
+     * window displays progress.  The assignments are added in the order they are listed in
+     * the json array.  If loading is cancelled, only the assignments already created are added.
+     * They are added on the calling thread, since the cancelled tasks may still be running.
      * 
      * @param jsonArray - a json array that contains the assignment information.
      */
     private void init(JsonArray jsonArray) {
-    	// Loader thread to initialize each assignment and update the operation status 
-    	final class LoaderThread extends Thread {
-    		public void run() {
-    	    	double pct = 0;
-    			for (JsonAbstractValue obj:jsonArray) {
-    	            // create and add the courses, configuring them from the canvas request data
-    	            Assignment assignment = new Assignment((JsonObject)obj);
-    	            add(assignment);
-    	        	pct = pct +  1.0/(double)jsonArray.size();
-					loadingStatus.setStatus(null,assignment.getName(),pct);
-    	        }
-				loadingStatus.setStatus(null,null,1.0);
-    		}
-    	}
-    	// initialize the progress bar and wait for the loading operation to complete
     	loadingStatus.setStatus("Loading Assignments for Group: "+assignment_group,null,-1);
-    	ProgressDlg progress = new ProgressDlg(loadingStatus);
-    	LoaderThread loader = new LoaderThread();
-    	loader.start();
-    	progress.showAndWait();
-    	
-    	// if the dialog box is closed before loading completes, stop the
-    	// loader thread
-        if (loadingStatus.getPercentDone()<1.0) {
-            loader.interrupt();
+    	Assignment[] assignments = new Assignment[jsonArray.size()];
+    	AtomicInteger created = new AtomicInteger();
+    	ArrayList<Integer> indices = new ArrayList<>();
+    	for (int i=0; i<jsonArray.size(); i++) indices.add(i);
+    	LoadingScope.run(loadingStatus, () -> LoadingScope.forEach(indices, i -> {
+            // create the assignment, configuring it from the canvas request data
+    		Assignment assignment = new Assignment((JsonObject)jsonArray.get(i));
+    		assignments[i] = assignment;
+    		loadingStatus.setStatus(null,assignment.getName(),
+    				(double)created.incrementAndGet()/(double)jsonArray.size());
+    	}));
+    	for (Assignment assignment:assignments) {
+    		if (assignment != null) add(assignment);
     	}
-    	// wait for the loader to die
-    	try {
-			loader.join();
-		} catch (InterruptedException ignored) {
-		}
     }
     
     /**
@@ -115,12 +102,18 @@ public class Assignments extends ArrayList<Assignment> implements ProvidesLoadin
     }
 
     /**
-     * load all the grades from canvas for every assignment associated with this instance
+     * load all the grades from canvas for every assignment associated with this instance.  The
+     * assignments are loaded concurrently, and the progress window shows how many of them
+     * have been loaded.
      */
     public void loadGrades() {
-        for (Assignment a:this) {
+        AtomicInteger loaded = new AtomicInteger();
+        loadingStatus.setStatus("Loading Results for Group: "+assignment_group,null,0.0);
+        LoadingScope.run(loadingStatus, () -> LoadingScope.forEach(this, a -> {
             a.loadGrades();
-        } 
+            loadingStatus.setStatus(null,"Loaded Results for Assignment: "+a.getName(),
+                    (double)loaded.incrementAndGet()/(double)size());
+        }));
     }
     
     /**
@@ -49,7 +49,7 @@ public class AuthenticationDlg extends Stage {
 
         // begin loading the canvas login web page
         webEngine.setJavaScriptEnabled(true);
-        webEngine.load("https://canvas.asu.edu/login");
+        webEngine.load(RequesterSso.BASE_URL + "login");
 
         // set up a listener for the webEngineLoader so that when each page loads
         // we can check if the canvas website has been reached
@@ -58,7 +58,7 @@ public class AuthenticationDlg extends Stage {
                     if (newState == State.SUCCEEDED) {
                         // new page has loaded
                         setTitle(webEngine.getLocation());
-                        if (!webEngine.getLocation().contains("https://canvas.asu.edu/?")) {
+                        if (!webEngine.getLocation().contains(RequesterSso.BASE_URL + "?")) {
                             // here if the authentication is not yet complete - make the scene visible
                             browser.setVisible(true);
                         } else {
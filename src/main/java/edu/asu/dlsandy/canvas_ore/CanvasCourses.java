@@ -6,7 +6,7 @@ package edu.asu.dlsandy.canvas_ore;
  */
 
 
-import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.Serial;
 import java.util.ArrayList;
 import java.util.logging.Level;
@@ -23,17 +23,13 @@ public class CanvasCourses extends ArrayList<CanvasCourse> {
      * constructor - initialize from a canvas request of all courses associated with the canvas user
      */
     public CanvasCourses()  {
-        try {
-            JsonArray courses;
-            courses = (JsonArray) RequesterSso.apiGetRequest("courses?per_page=100");
-            if (courses != null) {
-                for (JsonAbstractValue obj:courses) {
-                    // create and add the courses, configuring them from the canvas request data
-                    CanvasCourse course = new CanvasCourse((JsonObject)obj);
-                    add(course);
-                }
+        try (CanvasPages<JsonObject> courses = CanvasPages.objects("courses?per_page=100", null)) {
+            for (JsonObject obj:courses) {
+                // create and add the courses, configuring them from the canvas request data
+                CanvasCourse course = new CanvasCourse(obj);
+                add(course);
             }
-        } catch (IOException ex) {
+        } catch (UncheckedIOException ex) {
             Logger.getLogger(CanvasCourses.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
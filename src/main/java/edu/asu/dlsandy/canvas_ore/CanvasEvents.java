@@ -0,0 +1,208 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for the phases of a Canvas ORE run, so that a recording of
+ * the application shows which course, assignment or report phase the time was spent on.
+ * <p>
+ * The events are disabled unless a recording is running (for instance, when the
+ * application is started with -XX:StartFlightRecording), in which case they cost almost
+ * nothing.
+ */
+public class CanvasEvents {
+
+    /**
+     * A request made to canvas, which may span many pages
+     */
+    @Name("edu.asu.dlsandy.canvas_ore.Request")
+    @Label("Canvas Request")
+    @Category({"Canvas ORE", "Network"})
+    @Description("A request made to canvas, from the first page requested until the last page is read")
+    @StackTrace(false)
+    public static final class Request extends Event {
+        @Label("URL")
+        String url;
+
+        @Label("Endpoint")
+        @Description("The url with its query removed and numeric path segments replaced by {id}")
+        String endpoint;
+
+        @Label("Pages")
+        int pages;
+
+        @Label("Coalesced")
+        @Description("True if the request was answered by an identical request made earlier in the run")
+        boolean coalesced;
+
+        @Label("Succeeded")
+        boolean succeeded;
+
+        Request(String url) {
+            this.url = url;
+            this.endpoint = CanvasRequestMetrics.template(url);
+        }
+    }
+
+    /**
+     * A single page read from canvas
+     */
+    @Name("edu.asu.dlsandy.canvas_ore.Page")
+    @Label("Canvas Page")
+    @Category({"Canvas ORE", "Network"})
+    @Description("A single page read from canvas, from sending the request until the body is closed")
+    @StackTrace(false)
+    public static final class Page extends Event {
+        @Label("URL")
+        String url;
+
+        @Label("Endpoint")
+        String endpoint;
+
+        @Label("Status")
+        int status;
+
+        @Label("Time To First Byte")
+        @Timespan(Timespan.NANOSECONDS)
+        long timeToFirstByte;
+
+        @Label("Bytes Received")
+        @DataAmount(DataAmount.BYTES)
+        long wireBytes;
+
+        @Label("Bytes Decoded")
+        @DataAmount(DataAmount.BYTES)
+        long decodedBytes;
+
+        Page(String url) {
+            this.url = url;
+            this.endpoint = CanvasRequestMetrics.template(url);
+        }
+    }
+
+    /**
+     * Json text converted into JsonAbstractValues (or read with a JsonReader)
+     */
+    @Name("edu.asu.dlsandy.canvas_ore.JsonParse")
+    @Label("Json Parse")
+    @Category({"Canvas ORE", "Json"})
+    @StackTrace(false)
+    public static final class JsonParse extends Event {
+        @Label("Source")
+        @Description("\"string\" for JsonResultFactory.build, \"stream\" for a JsonStreamParser, \"reader\" for a JsonReader")
+        String source;
+
+        @Label("Characters")
+        long characters;
+
+        @Label("Nodes")
+        @Description("The number of objects, arrays and values built")
+        long nodes;
+
+        JsonParse(String source) {
+            this.source = source;
+        }
+    }
+
+    /**
+     * Loading and scoring the submissions for an assignment
+     */
+    @Name("edu.asu.dlsandy.canvas_ore.AssignmentGrades")
+    @Label("Assignment Grades")
+    @Category({"Canvas ORE", "Scoring"})
+    public static final class AssignmentGrades extends Event {
+        @Label("Course Id")
+        String courseId;
+
+        @Label("Assignment Id")
+        String assignmentId;
+
+        @Label("Assignment Name")
+        String assignmentName;
+
+        @Label("Quiz")
+        boolean quiz;
+
+        @Label("Students Graded")
+        int students;
+    }
+
+    /**
+     * Scoring the questions of a quiz question group
+     */
+    @Name("edu.asu.dlsandy.canvas_ore.QuestionGroupGrades")
+    @Label("Question Group Grades")
+    @Category({"Canvas ORE", "Scoring"})
+    public static final class QuestionGroupGrades extends Event {
+        @Label("Quiz Id")
+        String quizId;
+
+        @Label("Group Id")
+        String groupId;
+
+        @Label("Group Name")
+        String groupName;
+
+        @Label("Submissions")
+        int submissions;
+    }
+
+    /**
+     * Computing the symbol table for an outcome report
+     */
+    @Name("edu.asu.dlsandy.canvas_ore.SymbolTable")
+    @Label("Report Symbol Table")
+    @Category({"Canvas ORE", "Report"})
+    public static final class SymbolTable extends Event {
+        @Label("Course Id")
+        String courseId;
+
+        @Label("Outcomes")
+        int outcomes;
+
+        @Label("Students")
+        int students;
+
+        @Label("Symbols")
+        int symbols;
+    }
+
+    /**
+     * Rendering an outcome report
+     */
+    @Name("edu.asu.dlsandy.canvas_ore.ReportRender")
+    @Label("Report Rendering")
+    @Category({"Canvas ORE", "Report"})
+    @Description("Rendering a report, not including the time the user spends choosing where to save it")
+    public static final class ReportRender extends Event {
+        @Label("Course Id")
+        String courseId;
+
+        @Label("Writer")
+        @Description("The template used, or \"excel\" for the KPI workbook")
+        String writer;
+
+        @Label("Phase")
+        @Description("\"build\" while the report is assembled, \"write\" while it is saved")
+        String phase;
+
+        ReportRender(String courseId, String writer, String phase) {
+            this.courseId = courseId;
+            this.writer = writer;
+            this.phase = phase;
+        }
+    }
+}
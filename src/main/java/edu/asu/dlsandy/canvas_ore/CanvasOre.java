@@ -38,6 +38,9 @@ public class CanvasOre extends Application {
 	 *
      */
     private void createNewOutcomes() {
+        // each workflow starts with fresh data from canvas
+        RequesterSso.startRun();
+
     	// ask the user to pick the course to create the outcomes for
         CoursePickerForm cpf = new CoursePickerForm();
         CanvasCourse course = cpf.getCourse();
@@ -59,6 +62,9 @@ public class CanvasOre extends Application {
      *
      */
     private void cloneOutcomes() {
+        // each workflow starts with fresh data from canvas
+        RequesterSso.startRun();
+
         // open a file picker to get the outcome file to edit
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Select Outcome File to Clone");
@@ -104,6 +110,9 @@ public class CanvasOre extends Application {
 	 *
      */
     private void outcomeEdit() {
+        // each workflow starts with fresh data from canvas
+        RequesterSso.startRun();
+
         // open a file picker to get the outcome file to edit
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Select Outcome File to Edit");
@@ -149,6 +158,9 @@ public class CanvasOre extends Application {
             return;
         }
 
+        // each workflow starts with fresh data from canvas
+        RequesterSso.startRun();
+
     	// prompt the user to select an outcome file to report
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Select Outcome File to Use");
@@ -240,7 +252,7 @@ public class CanvasOre extends Application {
         
         // initiate canvas login by reading some dummy data
         try {
-			RequesterSso.httpGetRequest("https://canvas.asu.edu/api/v1/users/self");
+			RequesterSso.httpGetRequest(RequesterSso.API_URL + "users/self");
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
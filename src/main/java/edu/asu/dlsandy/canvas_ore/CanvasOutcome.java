@@ -33,7 +33,7 @@ public class CanvasOutcome {
      */
     public CanvasOutcome(JsonObject obj) {
         title = obj.getValue("title");
-        description = obj.getValue("description").replace("\\u003cp\\u003e", "").replace("\\u003c/p\\u003e", "\n");
+        description = obj.getValue("description").replace("<p>", "").replace("</p>", "\n");
         associations = new ArrayList<>();
         if (obj.get("associations")==null) return;
         for (JsonAbstractValue associationObject:(JsonArray)obj.get("associations")) {
@@ -113,8 +113,8 @@ public class CanvasOutcome {
             if (association.getQuestionBank()!=null) {
                 association_obj.put("question_bank",new JsonValue(association.getQuestionBank()));
             }
-            association_obj.put("exceeds_threshold", new JsonValue(Double.toString(association.getExceedsThreshold())));
-            association_obj.put("demonstrates_threshold", new JsonValue(Double.toString(association.getDemonstratesThreshold())));
+            association_obj.put("exceeds_threshold", JsonValue.number(association.getExceedsThreshold()));
+            association_obj.put("demonstrates_threshold", JsonValue.number(association.getDemonstratesThreshold()));
             array.add(association_obj);
         }
         obj.put("associations", array);
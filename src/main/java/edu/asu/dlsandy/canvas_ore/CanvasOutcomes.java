@@ -9,7 +9,6 @@ package edu.asu.dlsandy.canvas_ore;
 import java.io.IOException;
 import java.io.Serial;
 import java.util.ArrayList;
-import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,7 +23,8 @@ public class CanvasOutcomes extends ArrayList<CanvasOutcome> {
     
     /**
      * constructor - initialize the outcome list by loading any outcomes that exist within
-     * the specified course in canvas.
+     * the specified course in canvas.  The details of the outcomes are loaded concurrently,
+     * and the outcomes are added in the order canvas lists them.
      * 
      * @param course_id - the canvas course id
      * @param course_name - the name of the course as specified in canvas
@@ -36,10 +36,15 @@ public class CanvasOutcomes extends ArrayList<CanvasOutcome> {
             JsonArray outcome_links;
             outcome_links = (JsonArray) RequesterSso.apiGetRequest("courses/"+course_id+"/outcome_group_links?per_page=100");
             if (outcome_links != null) {
-                for (JsonAbstractValue outcome_link : outcome_links) {
-                    JsonObject json_outcome = (JsonObject) RequesterSso.apiGetRequest("outcomes/" + outcome_link.getValue("outcome.id") + "?per_page=100");
-                    CanvasOutcome outcome = new CanvasOutcome(Objects.requireNonNull(json_outcome));
-                    add(outcome);
+                CanvasOutcome[] outcomes = new CanvasOutcome[outcome_links.size()];
+                ArrayList<Integer> indices = new ArrayList<>();
+                for (int i=0; i<outcome_links.size(); i++) indices.add(i);
+                LoadingScope.forEach(indices, i -> {
+                    JsonObject json_outcome = outcomeDetails(outcome_links.get(i));
+                    if (json_outcome != null) outcomes[i] = new CanvasOutcome(json_outcome);
+                });
+                for (CanvasOutcome outcome:outcomes) {
+                    if (outcome != null) add(outcome);
                 }
             }
         } catch (IOException ex) {
@@ -47,6 +52,26 @@ public class CanvasOutcomes extends ArrayList<CanvasOutcome> {
         }
     }  
 
+    /*
+     * helper function to return the details of the outcome referred to by an outcome link.
+     * The link embeds an abbreviated copy of the outcome - if it includes the description,
+     * it is used as is.  Otherwise the outcome is requested from canvas.  Returns null if
+     * the outcome could not be loaded.
+     */
+    static private JsonObject outcomeDetails(JsonAbstractValue outcome_link) {
+        JsonAbstractValue embedded = ((JsonObject)outcome_link).get("outcome");
+        if ((embedded instanceof JsonObject) && ((JsonObject)embedded).containsKey("title")
+                && ((JsonObject)embedded).containsKey("description")) {
+            return (JsonObject)embedded;
+        }
+        try {
+            return (JsonObject) RequesterSso.apiGetRequest("outcomes/" + outcome_link.getValue("outcome.id") + "?per_page=100");
+        } catch (IOException ex) {
+            Logger.getLogger(CanvasOutcomes.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+
     /**
      * constructor - initialize the outcome list from the specified json object
      *
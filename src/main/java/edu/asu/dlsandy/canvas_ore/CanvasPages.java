@@ -0,0 +1,290 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A lazy view of the elements of a paginated Canvas API collection.
+ * <p>
+ * Each element is read from the response by an ElementReader.  A class that reads its
+ * elements with a JsonReader (see CanvasSubmission) needs only to read the members it uses;
+ * objects() returns a view that builds a JsonObject for each element instead.
+ * <p>
+ * Nothing is requested until iteration begins.  Elements are then returned one page at a
+ * time, and while the elements of one page are being processed, the next page is downloaded
+ * and parsed in the background.  At most two pages are held in memory at once.
+ * <p>
+ * If a request fails with an I/O error, the iterator throws an UncheckedIOException.  If
+ * canvas returns an error response, iteration simply ends and succeeded() returns false.
+ * <p>
+ * A view should be closed once the caller is done with it (typically with try-with-resources),
+ * so that an iteration that ends early - with a break or an exception - does not leave the
+ * next page downloading in the background with nothing to read it.
+ */
+public class CanvasPages<T> implements Iterable<T>, AutoCloseable {
+    static private final ExecutorService prefetcher = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "PagePrefetcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String uri;
+    private final String key;
+    private final JsonReader.ElementReader<T> reader;
+    private volatile int pageCount = -1;
+    private volatile int pagesRead = 0;
+    private volatile boolean failed = false;
+
+    // the iterations that have not yet read their last page
+    private final ArrayList<PageIterator> open = new ArrayList<>();
+
+    /**
+     * A single page of the collection - its elements and the Link header that was returned
+     * with it.
+     */
+    private static final class Page<T> {
+        final ArrayList<T> elements = new ArrayList<>();
+        String link;
+    }
+
+    /**
+     * constructor - create a view of the collection at the specified api resource
+     *
+     * @param uri - the resource to request (not including the api url)
+     * @param key - null if each page of the response is an array.  Otherwise, each page is
+     *            an object and this is the key of the array holding the elements.
+     * @param reader - reads each element from the response
+     */
+    public CanvasPages(String uri, String key, JsonReader.ElementReader<T> reader) {
+        this.uri = uri;
+        this.key = key;
+        this.reader = reader;
+    }
+
+    /**
+     * returns a view of the collection at the specified api resource where each element is
+     * a JsonObject
+     *
+     * @param uri - the resource to request (not including the api url)
+     * @param key - null if each page of the response is an array.  Otherwise, each page is
+     *            an object and this is the key of the array holding the elements.
+     */
+    static public CanvasPages<JsonObject> objects(String uri, String key) {
+        return new CanvasPages<>(uri, key, in -> (JsonObject)in.readValue());
+    }
+
+    /*
+     * helper function to read and parse a single page.  Returns null if canvas returned an
+     * error response.  Reading stops with a CancellationException once the page has been
+     * abandoned, so that the rest of the response is not downloaded.
+     */
+    private Page<T> readPage(HttpResponse<InputStream> response, AtomicBoolean abandoned) {
+        RequesterSso.lastResponse = response.statusCode();
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                Logger.getLogger(CanvasPages.class.getName()).log(Level.WARNING,
+                        "canvas returned status {0} for {1}", new Object[] {response.statusCode(), response.uri()});
+                return null;
+            }
+            Page<T> page = new Page<>();
+            page.link = response.headers().firstValue("Link").orElse(null);
+            CanvasEvents.JsonParse event = new CanvasEvents.JsonParse("reader");
+            event.begin();
+            JsonReader in = new JsonReader(body);
+            try {
+                in.readElements(key, reader, element -> {
+                    if (abandoned.get()) throw new CancellationException();
+                    page.elements.add(element);
+                });
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.characters = in.getTokenizer().getCharacters();
+                    event.nodes = in.getTokenizer().getNodes();
+                    event.commit();
+                }
+            }
+            return page;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /*
+     * helper function to begin downloading and parsing a page in the background
+     */
+    private CompletableFuture<Page<T>> fetch(String url) {
+        CompletableFuture<HttpResponse<InputStream>> response = CanvasTransport.getAsync(url);
+        // whichever of the reader and the cancellation claims the response first closes it
+        AtomicBoolean claimed = new AtomicBoolean();
+        AtomicBoolean abandoned = new AtomicBoolean();
+        CompletableFuture<Page<T>> page = response.thenApplyAsync(r -> {
+            if (!claimed.compareAndSet(false, true)) {
+                CanvasTransport.discard(r);
+                return null;
+            }
+            return readPage(r, abandoned);
+        }, prefetcher);
+        // cancelling the page cancels the request, stops a page that is being read, and
+        // releases a response that has already arrived but will not be read
+        page.whenComplete((p, ex) -> {
+            if (ex instanceof CancellationException) {
+                abandoned.set(true);
+                response.cancel(true);
+                if (claimed.compareAndSet(false, true)) response.thenAccept(CanvasTransport::discard);
+            }
+        });
+        return page;
+    }
+
+    /**
+     * Iterates over the elements of the collection, one page at a time
+     */
+    private final class PageIterator implements Iterator<T> {
+        private CompletableFuture<Page<T>> next = null;
+        private Iterator<T> current = Collections.emptyIterator();
+        private final CanvasEvents.Request event = new CanvasEvents.Request(RequesterSso.API_URL + uri);
+
+        PageIterator() {
+            if (RequesterSso.authenticate()) {
+                CanvasTransport.getMetrics().recordRequest(RequesterSso.API_URL + uri, false);
+                event.begin();
+                synchronized (open) {open.add(this);}
+                next = fetch(RequesterSso.API_URL + uri);
+            } else {
+                failed = true;
+            }
+        }
+
+        /*
+         * helper function to record the request once the last page has been read (or the
+         * request has failed or been abandoned)
+         */
+        private void finish() {
+            next = null;
+            synchronized (open) {open.remove(this);}
+            event.pages = pagesRead;
+            event.succeeded = !failed;
+            event.commit();
+        }
+
+        /*
+         * helper function to abandon the iteration, cancelling the page that is being
+         * downloaded (if any)
+         */
+        private void abandon() {
+            CompletableFuture<Page<T>> pending = next;
+            if (pending == null) return;
+            pending.cancel(true);
+            finish();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (next == null) return false;
+                Page<T> page;
+                try {
+                    page = CanvasTransport.await(next);
+                } catch (IOException ex) {
+                    failed = true;
+                    finish();
+                    throw new UncheckedIOException(ex);
+                }
+                next = null;
+                if (page == null) {
+                    failed = true;
+                    finish();
+                    return false;
+                }
+                if (pagesRead == 0) {
+                    // the first page tells us how many pages there are (if canvas numbers them)
+                    pageCount = RequesterSso.getPageNumber(RequesterSso.getLastLink(page.link));
+                }
+                pagesRead++;
+
+                // start on the next page before handing out the elements of this one
+                String nextUrl = RequesterSso.getNextLink(page.link);
+                if (nextUrl.isEmpty()) {
+                    finish();
+                } else {
+                    next = fetch(nextUrl);
+                }
+                current = page.elements.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return current.next();
+        }
+    }
+
+    /**
+     * returns an iterator over the elements of the collection.  Each call to this method
+     * requests the collection from canvas again.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new PageIterator();
+    }
+
+    /**
+     * returns a sequential stream of the elements of the collection.  Closing the stream
+     * closes the view.
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false).onClose(this::close);
+    }
+
+    /**
+     * stop every iteration of the collection that has not yet read its last page, cancelling
+     * the page that each is downloading.  Iterations that have ended are not affected.
+     */
+    @Override
+    public void close() {
+        ArrayList<PageIterator> iterations;
+        synchronized (open) {iterations = new ArrayList<>(open);}
+        for (PageIterator iteration:iterations) iteration.abandon();
+    }
+
+    /**
+     * returns the number of pages in the collection, or -1 if it is not yet known (canvas
+     * does not report the page count for every collection)
+     */
+    public int getPageCount() {return pageCount;}
+
+    /**
+     * returns the number of pages that have been read so far
+     */
+    public int getPagesRead() {return pagesRead;}
+
+    /**
+     * returns false if canvas returned an error response (or authentication failed) before
+     * every page had been read, otherwise true.
+     */
+    public boolean succeeded() {return !failed;}
+}
@@ -29,11 +29,9 @@ public class CanvasQuestionBank {
      * the specified course ID and bank ID
      */
     public CanvasQuestionBank(String course_id, String bank_id)  {      
-        // there is no api call to get one question bank - so get them all, then return the 
-        // one we are interested in.
-        @SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
-            CanvasQuestionBanks banks = new CanvasQuestionBanks(course_id);
-        CanvasQuestionBank bank = banks.getById(bank_id);
+        // there is no api call to get one question bank - so look it up in the index of
+        // all the banks of the course.
+        CanvasQuestionBank bank = CanvasQuestionBankIndex.forCourse(course_id).getById(bank_id);
         if (bank!= null) {
         	id = bank.id;
         	question_count = bank.question_count;
@@ -0,0 +1,107 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An index of the question banks of a course, keyed by bank id.
+ * <p>
+ * Canvas has no api to read a single question bank, so the banks of a course are read all
+ * at once.  The index reads them the first time a bank of the course is looked up, and the
+ * same index is shared by every quiz and question group of the course for the rest of the
+ * run.  If a bank that is not in the index is looked up (for instance, one created after the
+ * index was loaded), the banks are read again and any new ones are added to the index.
+ */
+public class CanvasQuestionBankIndex {
+    // the index of each course, for the current run
+    static private final ConcurrentHashMap<String, CanvasQuestionBankIndex> indexes = new ConcurrentHashMap<>();
+
+    private final String course_id;
+    private final HashMap<String, CanvasQuestionBank> banks = new HashMap<>();
+
+    // ids that were looked up but are not in canvas, so that canvas is not asked again
+    private final HashSet<String> unknown = new HashSet<>();
+    private boolean loaded = false;
+
+    // guards the banks and unknown ids while the index loads (see LoadingScope)
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * constructor - create an empty index for the specified course
+     */
+    private CanvasQuestionBankIndex(String course_id) {
+        this.course_id = course_id;
+    }
+
+    /**
+     * returns the question bank index of the specified course
+     */
+    static public CanvasQuestionBankIndex forCourse(String course_id) {
+        return indexes.computeIfAbsent(course_id, CanvasQuestionBankIndex::new);
+    }
+
+    /**
+     * forget the indexes of every course, so that the next run reads the question banks
+     * from canvas again
+     */
+    static public void reset() {
+        indexes.clear();
+    }
+
+    /*
+     * helper function to read the question banks from canvas and add any that are not
+     * already indexed.  Banks already in the index are kept, so that the objects handed out
+     * remain valid.
+     *
+     * @param again - true if the banks have been read before during this run
+     */
+    private void refresh(boolean again) {
+        if (again) RequesterSso.forget(CanvasQuestionBanks.url(course_id));
+        for (CanvasQuestionBank bank:new CanvasQuestionBanks(course_id)) {
+            if (bank.getId() != null) banks.putIfAbsent(bank.getId(), bank);
+        }
+    }
+
+    /**
+     * returns the question bank with the specified id, or null if the course has no such
+     * bank
+     */
+    public CanvasQuestionBank getById(String bank_id) {
+        lock.lock();
+        try {
+            if (!loaded) {
+                refresh(false);
+                loaded = true;
+            }
+            CanvasQuestionBank bank = banks.get(bank_id);
+            if ((bank == null) && (!unknown.contains(bank_id))) {
+                refresh(true);
+                bank = banks.get(bank_id);
+                if (bank == null) unknown.add(bank_id);
+            }
+            return bank;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * returns the number of question banks in the index
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return banks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -23,16 +23,9 @@ public class CanvasQuestionBanks extends ArrayList<CanvasQuestionBank> {
 	 * @param course_id - the canvas course id to load the information from
 	 */
 	public CanvasQuestionBanks(String course_id)  {
-        String strResponse;
         try {
-            strResponse = RequesterSso.httpGetRequest("https://canvas.asu.edu/courses/"+course_id+"/question_banks");
-            if (strResponse == null) {
-            	return;
-            }
-
-            // convert the JSON-coded response into JSON objects
-            JsonResultFactory rf = new JsonResultFactory();
-            JsonArray ary = (JsonArray)rf.build(strResponse);
+            // this is not an api request, but the response is still json
+            JsonArray ary = (JsonArray)RequesterSso.jsonGetRequest(url(course_id));
             if (ary != null) {
           		init(ary);
             }
@@ -41,6 +34,13 @@ public class CanvasQuestionBanks extends ArrayList<CanvasQuestionBank> {
         
     }  
     
+	/**
+	 * returns the url the question banks of the specified course are read from
+	 */
+	static String url(String course_id) {
+		return RequesterSso.BASE_URL+"courses/"+course_id+"/question_banks";
+	}
+
 	/*
 	 * helper function to initialize the question banks from the given JSON array
 	 */
@@ -9,6 +9,7 @@ package edu.asu.dlsandy.canvas_ore;
 import java.io.IOException;
 import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,10 +24,12 @@ public class CanvasQuestionGroup {
 	double question_points;
 	String bank_id;
 	int position;
+	final String course_id;
 	CanvasQuestionBank bank;
+	boolean loadedBank = false;
+	private final ReentrantLock bankLock = new ReentrantLock();
     // a map of scores for this group.  The primary key is the student id.  
 	final TreeMap<String,Double> student_scores;
-    private final LoadingStatus loadingStatus = new LoadingStatus();
 
     /**
      * constructor - initialize the object by reading information from Canvas LMS
@@ -35,6 +38,7 @@ public class CanvasQuestionGroup {
      * @param gid - the group ID for the question group
      */
     public CanvasQuestionGroup(String cid, String qid, String gid) {
+        course_id = cid;
 		// first, run the query to get the quiz info
 	    try {
 	        JsonObject obj;
@@ -48,9 +52,6 @@ public class CanvasQuestionGroup {
 	        position = obj.getInteger("position");
 	        question_points = obj.getDouble("question_points");
 	        bank_id = Objects.requireNonNull(obj).getValue("assessment_question_bank_id");
-	        if ((bank_id!=null) && (!bank_id.equalsIgnoreCase("null"))) {
-	        	bank = new CanvasQuestionBank(cid, bank_id);
-	        }
 	    } catch (IOException ex) {
 	        Logger.getLogger("QuestionGroup").log(Level.SEVERE, null, ex);
 	    }
@@ -90,76 +91,41 @@ public class CanvasQuestionGroup {
 	
 	/**
 	 * returns the question bank associated with this group if one exists,
-	 * otherwise, null.
+	 * otherwise, null.  The bank is looked up in the course's question bank index on
+	 * first access.
 	 */
-	public CanvasQuestionBank getBank() {return bank;}
+	public CanvasQuestionBank getBank() {
+		bankLock.lock();
+		try {
+			if (!loadedBank) {
+				loadedBank = true;
+		        if ((bank_id!=null) && (!bank_id.equalsIgnoreCase("null"))) {
+		        	bank = CanvasQuestionBankIndex.forCourse(course_id).getById(bank_id);
+		        }
+			}
+			return bank;
+		} finally {
+			bankLock.unlock();
+		}
+	}
 
 	/**
-	 * load grades associated with questions in this question group.  Because
-	 * this operation could take a long time, a progress bar is displayed while loading
-	 * @param submissions - all student quiz submissions for the associated quiz
+	 * forget the scores of every student.  The scores are loaded for every group of a quiz
+	 * at once by CanvasQuestionGroups.loadGrades().
 	 */
-	public boolean loadGrades(CanvasQuizSubmissions submissions) {
-		/* 
-		 * a helper thread for loading the data and updating the status bar
-		 */
-    	final class LoaderThread extends Thread {
-    		public void run() {
-    			double pct = 0.0;
-    			double step = 1.0/(double)submissions.size();
-    			
-    		    // loop through each submission
-    			for (CanvasQuizSubmission quizSubmission:submissions) {
-    		        // ignore submissions that don't match the kept score
-    		        if (quizSubmission.getScore()!=quizSubmission.getKeptScore()) {
-    		        	pct = pct+step;
-    		        	continue; 
-    		        }
-    		        
-    	        	loadingStatus.setStatus(null,"Processing Scores for Submission: " + quizSubmission.getId(),pct);
-    	        	pct = pct+step;
-    	        	
-    	        	// load the questions for this submission
-    		        @SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
-						CanvasQuizQuestions qq = new CanvasQuizQuestions(quizSubmission.getId());
-
-    		        // loop for each question
-    		        double sum = 0.0;
-    		        for (CanvasQuizQuestion q:qq) {
-    		        	if (q.getQuizGroupId().equals(id)) {
-							//noinspection StatementWithEmptyBody
-							if (q.getCorrect()==null) {
-    		        			// assume that the question was not answered
-    		        		} else {
-    		        			if (q.getCorrect().equalsIgnoreCase("true")) sum = sum + question_points;
-    		        		}
-    		        	}
-    		        }    		
-    		        student_scores.put(quizSubmission.getUserId(),sum);
-    		    }
-    	            
-				loadingStatus.setStatus(null, null, 1.0);
-    		}
-    	}
-		boolean result = true;  
+	void clearStudentScores() {
 	    student_scores.clear();
-	    
-    	loadingStatus.setStatus("Processing Question Bank: " + name,null,-1);
-    	ProgressDlg progress = new ProgressDlg(loadingStatus);
-    	LoaderThread loader = new LoaderThread();
-    	loader.start();
-    	progress.showAndWait();
-  
-    	// if the dialog box is closed before loading completes, stop the
-    	// loader thread
-    	synchronized(loadingStatus) {
-    		if (loadingStatus.getPercentDone()<1.0) {
-    			loader.interrupt();
-    		}
-    	}
-    	
-	    return result;
-	} 
+	}
+
+	/**
+	 * set the number of points that the specified student earned from questions in
+	 * this question group
+	 * @param student_id - the ID of the student
+	 * @param points - the number of points earned
+	 */
+	void setStudentScore(String student_id, double points) {
+	    student_scores.put(student_id, points);
+	}
 	
 	/**
 	 * returns the number of points that the specified student earned from questions
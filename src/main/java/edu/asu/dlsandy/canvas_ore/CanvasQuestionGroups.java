@@ -8,49 +8,80 @@ package edu.asu.dlsandy.canvas_ore;
 
 import java.io.Serial;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Representation of a list of all Canvas question groups associated with a specific quiz 
  */
-public class CanvasQuestionGroups extends ArrayList<CanvasQuestionGroup> {
+public class CanvasQuestionGroups extends ArrayList<CanvasQuestionGroup> implements ProvidesLoadingStatus {
 	@Serial
 	private static final long serialVersionUID = 1L;
+	private final transient LoadingStatus loadingStatus = new LoadingStatus();
+	private final String quiz_title;
 
 	/**
-	 * Constructor - initialize the question groups by retrieving the information from Canvas LMS
+	 * Constructor - initialize the question groups by retrieving the information from Canvas LMS.
+	 * <p>
+	 * The groups are found from the quiz's own questions, each of which names the group it
+	 * belongs to (if any).  Groups that draw their questions from a question bank have no
+	 * questions in the quiz, so if the groups found do not account for every question asked,
+	 * the questions asked in the quiz submissions are scanned for the missing groups.
 	 * @param course_id - the ID of the course the question groups are associated with
 	 * @param quiz - the ID of the quiz the question groups are associated with.
 	 */
 	public CanvasQuestionGroups(String course_id, CanvasQuiz quiz)  {
-		// Get the quiz submissions.  
+		quiz_title = quiz.getTitle();
+
+		// find the groups named by the questions of the quiz
 		@SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
-			CanvasQuizSubmissions quizSubmissions = new CanvasQuizSubmissions(course_id, quiz.getId());
+			CanvasQuizQuestions quizQuestions = new CanvasQuizQuestions(course_id, quiz.getId());
+		LinkedHashSet<String> groupIds = new LinkedHashSet<>();
+		int ungrouped = 0;
+		for (CanvasQuizQuestion qq:quizQuestions) {
+			if (qq.getQuizGroupId() != null) {
+				groupIds.add(qq.getQuizGroupId());
+			} else {
+				ungrouped++;
+			}
+		}
+		int asked = ungrouped + addGroups(course_id, quiz.getId(), groupIds);
+		if (asked >= quiz.getQuestionCount()) return;
 
-		// Find a submission that has every question answered
+		// some questions are drawn from question banks - find their groups from the
+		// questions asked in the submissions
+		@SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
+			CanvasQuizSubmissions quizSubmissions = new CanvasQuizSubmissions(course_id, quiz.getId());
 		for (CanvasQuizSubmission qs:quizSubmissions) {
-		    // for each submission, get the questions asked
 			@SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
 				CanvasQuizQuestions questions = new CanvasQuizQuestions(qs.getId());
-		
-			if (questions.size() == quiz.getQuestionCount()) {
-				// create a set of unique question group Ids
-				HashSet<String> groupIds = new HashSet<>();
-				for (CanvasQuizQuestion qq:questions) {
-					if (qq.getQuizGroupId() != null) {
-						groupIds.add(qq.getQuizGroupId());
-					}
+			LinkedHashSet<String> missing = new LinkedHashSet<>();
+			for (CanvasQuizQuestion qq:questions) {
+				if ((qq.getQuizGroupId() != null) && (!groupIds.contains(qq.getQuizGroupId()))) {
+					missing.add(qq.getQuizGroupId());
 				}
-				
-				// for each group id identified, create a quiz group object
-				for (String groupId:groupIds) {
-					CanvasQuestionGroup qg = new CanvasQuestionGroup(course_id,quiz.getId(),groupId);
-					add(qg);
-				}
-				break;
 			}
+			groupIds.addAll(missing);
+			asked += addGroups(course_id, quiz.getId(), missing);
+			if (asked >= quiz.getQuestionCount()) break;
 		}
     }  
+
+	/*
+	 * helper function to create and add the question groups with the specified ids.  Returns
+	 * the number of questions that are picked from the groups added.
+	 */
+	private int addGroups(String course_id, String quiz_id, Collection<String> groupIds) {
+		int picked = 0;
+		for (String groupId:groupIds) {
+			CanvasQuestionGroup qg = new CanvasQuestionGroup(course_id,quiz_id,groupId);
+			add(qg);
+			picked += qg.getPickCount();
+		}
+		return picked;
+	}
     
 	/**
 	 * returns the question group with the matching id, otherwise null.
@@ -68,16 +99,92 @@ public class CanvasQuestionGroups extends ArrayList<CanvasQuestionGroup> {
     }
     
     /**
-     * load the grades for each question group in the list
+     * load the grades for each question group in the list.  The questions asked in each
+     * submission are fetched once (the submissions are fetched concurrently), and the points
+     * earned are added to the score of the group each question belongs to in a single pass.
      *
      * @param submissions - all student submissions for the associated quiz
      */
 	public void loadGrades(CanvasQuizSubmissions submissions) {
-    	boolean result = true;
+		// only the submissions that match the kept score are graded
+		ArrayList<CanvasQuizSubmission> kept = new ArrayList<>();
+		for (CanvasQuizSubmission quizSubmission:submissions) {
+			if (quizSubmission.getScore()==quizSubmission.getKeptScore()) kept.add(quizSubmission);
+		}
+
+		HashMap<String,Integer> groupIndex = new HashMap<>();
+		ArrayList<GroupGrades> grades = new ArrayList<>();
 		for (CanvasQuestionGroup g:this) {
-    		result = result & g.loadGrades(submissions);
-    	}
+			groupIndex.put(g.getId(), grades.size());
+			grades.add(new GroupGrades(g));
+		}
+
+		// the points earned in each group, for each submission
+		double[][] sums = new double[kept.size()][];
+		AtomicInteger scored = new AtomicInteger();
+		loadingStatus.setStatus("Processing Question Groups for Quiz: " + quiz_title,null,-1);
+		LoadingScope.run(loadingStatus, () -> {
+			ArrayList<Integer> indices = new ArrayList<>();
+			for (int i=0; i<kept.size(); i++) indices.add(i);
+			LoadingScope.forEach(indices, i -> {
+	        	// load the questions for this submission
+		        @SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
+					CanvasQuizQuestions qq = new CanvasQuizQuestions(kept.get(i).getId());
+
+		        // add the points for each correct question to the score of its group
+		        double[] sum = new double[size()];
+		        for (CanvasQuizQuestion q:qq) {
+		        	Integer group = groupIndex.get(q.getQuizGroupId());
+		        	if ((group != null) && (q.getCorrect() != null) && (q.getCorrect().equalsIgnoreCase("true"))) {
+		        		sum[group] += get(group).getPointsPerQuestion();
+		        	}
+		        }
+		        if (!Thread.currentThread().isInterrupted()) sums[i] = sum;
+	        	loadingStatus.setStatus(null,"Processing Scores for Submission: " + kept.get(i).getId(),
+	        			(double)scored.incrementAndGet()/(double)kept.size());
+			});
+		});
+
+		// record the scores in submission order
+		for (CanvasQuestionGroup g:this) g.clearStudentScores();
+		for (int i=0; i<kept.size(); i++) {
+			if (sums[i] == null) continue;
+			for (int group=0; group<size(); group++) {
+				get(group).setStudentScore(kept.get(i).getUserId(), sums[i][group]);
+			}
+		}
+		for (GroupGrades g:grades) g.commit(submissions.size());
     }
+
+	/*
+	 * the flight recorder event for scoring a single question group.  The groups of a quiz
+	 * are scored together, so every event spans the scoring of the whole quiz.
+	 */
+	private static final class GroupGrades {
+		final CanvasQuestionGroup group;
+		final CanvasEvents.QuestionGroupGrades event = new CanvasEvents.QuestionGroupGrades();
+
+		GroupGrades(CanvasQuestionGroup group) {
+			this.group = group;
+			event.begin();
+		}
+
+		void commit(int submissions) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.quizId = group.quiz_id;
+				event.groupId = group.getId();
+				event.groupName = group.getName();
+				event.submissions = submissions;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * returns the loading status object for this instance
+	 */
+	public LoadingStatus getLoadingStatus() {return loadingStatus;}
 	
     /**
      * returns the number of points that a student earned against the specified outcome
@@ -8,34 +8,77 @@ package edu.asu.dlsandy.canvas_ore;
 
 import java.io.IOException;
 import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Representation of Canvas quiz object
+ * Representation of Canvas quiz object.
+ * <p>
+ * Nothing is requested from Canvas when the quiz is created.  The quiz information is
+ * loaded on first access, as are the question groups (and their question banks), so that
+ * listing the assignments of a course does not load every quiz.  prefetch() can be used to
+ * start loading the quiz in the background when it is known that it will soon be needed.
  */
 public class CanvasQuiz {
-    String  id;  
+    final String course_id;
+    final String id;
     String  title;
     int     question_count;
-    CanvasQuestionGroups groups;
+    private boolean loaded = false;
+    private CanvasQuestionGroups groups;
+
+    // guards the lazy loading of the quiz and its question groups (see LoadingScope)
+    private final ReentrantLock lock = new ReentrantLock();
     
     /**
-     * constructor - initialize the quiz object from the Canvas LMS api
+     * constructor - create the quiz object.  The quiz information is loaded from the Canvas
+     * LMS api when it is first needed.
      * @param course_id - the course id associated with the quiz
      * @param quiz_id - the ID of the quiz
      */
     CanvasQuiz(String course_id,String quiz_id) {
-    	// Run the query to get the quiz info
+        this.course_id = course_id;
+        this.id = quiz_id;
+    }
+
+    /*
+     * helper function to load the quiz information from canvas on first use
+     */
+    private void load() {
+        lock.lock();
         try {
+            if (loaded) return;
+            loaded = true;
+        	// Run the query to get the quiz info
             JsonObject obj;
-            obj = (JsonObject) RequesterSso.apiGetRequest("courses/"+course_id+"/quizzes/"+quiz_id);
-        	id = Objects.requireNonNull(obj).getValue("id");
-        	title = obj.getValue("title");
+            obj = (JsonObject) RequesterSso.apiGetRequest("courses/"+course_id+"/quizzes/"+id);
+        	title = Objects.requireNonNull(obj).getValue("title");
         	question_count = obj.getInteger("question_count");
-        	groups = new CanvasQuestionGroups(course_id, this);
         } catch (IOException ex) {
             Logger.getLogger("Quiz").log(Level.SEVERE, null, ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * start loading the quiz information, question groups and question banks in the
+     * background.  This is only a hint: anything that has not finished loading when it is
+     * accessed is waited for (or loaded) by the caller.
+     * <p>
+     * When called from a loading task, the prefetch is forked into the task's scope, so that
+     * it is cancelled along with the rest of the loading.
+     */
+    public void prefetch() {
+        Runnable prefetch = () -> {
+            for (CanvasQuestionGroup group:getQuestionGroups()) group.getBank();
+        };
+        LoadingScope scope = LoadingScope.currentScope();
+        if (scope != null) {
+            scope.fork(prefetch);
+        } else {
+            Thread.ofVirtual().name("quiz-prefetch-"+id).start(prefetch);
         }
     }
     
@@ -46,7 +89,7 @@ public class CanvasQuiz {
      */
 	public void loadGrades(String course_id) {
     	CanvasQuizSubmissions quizSubmissions = new CanvasQuizSubmissions(course_id, id);
-        groups.loadGrades(quizSubmissions);
+        getQuestionGroups().loadGrades(quizSubmissions);
     }
 	
 	/**
@@ -57,15 +100,30 @@ public class CanvasQuiz {
     /**
      * returns the title of the quiz
      */
-    public String getTitle() {return title;}
+    public String getTitle() {
+        load();
+        return title;
+    }
 
     /**
      *  returns the number of questions in the quiz
      */
-    public int getQuestionCount() {return question_count;}
+    public int getQuestionCount() {
+        load();
+        return question_count;
+    }
 
     /**
-     * returns a list of question groups associated with the quiz
+     * returns a list of question groups associated with the quiz.  The groups are loaded
+     * from canvas on first access.
      */
-    public CanvasQuestionGroups getQuestionGroups() {return groups;}
-}
\ No newline at end of file
+    public CanvasQuestionGroups getQuestionGroups() {
+        lock.lock();
+        try {
+            if (groups == null) groups = new CanvasQuestionGroups(course_id, this);
+            return groups;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
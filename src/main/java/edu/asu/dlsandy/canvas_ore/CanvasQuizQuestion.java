@@ -40,6 +40,29 @@ public class CanvasQuizQuestion {
         correct = obj.getValue("correct");
     }
 
+    /**
+     * constructor - initialize the canvas quiz question by reading a question object from a
+     * JsonReader.  Members that are not needed (question text, answers, etc.) are skipped.
+     * @param in - a json reader positioned at the start of the question object
+     */
+    CanvasQuizQuestion(JsonReader in) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id" -> id = in.nextString();
+                case "quiz_id" -> quiz_id = in.nextString();
+                case "position" -> position = in.nextInt();
+                case "question_name" -> question_name = in.nextString();
+                case "question_type" -> question_type = in.nextString();
+                case "points_possible" -> points_possible = in.nextDouble();
+                case "quiz_group_id" -> quiz_group_id = in.nextString();
+                case "correct" -> correct = in.nextString();
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
     /**
      * constructor - initialize the quiz question by querying the canvas LMS api
      * @param course_id - the ID of the associated course
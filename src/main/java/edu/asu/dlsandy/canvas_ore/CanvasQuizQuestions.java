@@ -10,6 +10,7 @@ package edu.asu.dlsandy.canvas_ore;
 import java.io.IOException;
 import java.io.Serial;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,25 +28,27 @@ public class CanvasQuizQuestions extends ArrayList<CanvasQuizQuestion> {
 	 */
 	public CanvasQuizQuestions(String sid)  {
         try {
-            JsonObject obj;
-            obj = (JsonObject) RequesterSso.apiGetRequest("quiz_submissions/"+sid+"/questions?per_page=100");
-            if (obj != null) {
-          		if (obj.containsKey("quiz_submission_questions")) {
-          			init((JsonArray)obj.get("quiz_submission_questions"));
-          		}
-            }
+            List<CanvasQuizQuestion> questions;
+            questions = RequesterSso.apiReadRequest("quiz_submissions/"+sid+"/questions?per_page=100", "quiz_submission_questions", CanvasQuizQuestion.class, CanvasQuizQuestion::new);
+            if (questions != null) addAll(questions);
         } catch (IOException ex) {
             Logger.getLogger(Assignments.class.getName()).log(Level.SEVERE, null, ex);
         }
     }  
     
-    /*
-     * Initialize each question from the JsonArray returned from Canvas
-     */
-    private void init(JsonArray ary) {
-        for (JsonAbstractValue av:ary) {
-            CanvasQuizQuestion question = new CanvasQuizQuestion((JsonObject)av);
-            add(question);
+	/**
+	 * constructor - load the questions of a quiz from the canvas LMS API.  Questions that a
+	 *               quiz draws from a question bank are not included.
+	 * @param course_id - the ID of the course the quiz belongs to
+	 * @param quiz_id - the ID of the quiz
+	 */
+	public CanvasQuizQuestions(String course_id, String quiz_id)  {
+        try {
+            List<CanvasQuizQuestion> questions;
+            questions = RequesterSso.apiReadRequest("courses/"+course_id+"/quizzes/"+quiz_id+"/questions?per_page=100", null, CanvasQuizQuestion.class, CanvasQuizQuestion::new);
+            if (questions != null) addAll(questions);
+        } catch (IOException ex) {
+            Logger.getLogger(Assignments.class.getName()).log(Level.SEVERE, null, ex);
         }
-    }    
+    }
 }
@@ -26,16 +26,13 @@ public class CanvasQuizSubmissions extends ArrayList<CanvasQuizSubmission> {
 	 */
 	public CanvasQuizSubmissions(String course_id, String quiz_id)  {
     	try {
-            JsonObject obj;
-            obj = (JsonObject) RequesterSso.apiGetRequest("courses/"+course_id+"/quizzes/"+quiz_id+"/submissions?per_page=100");
-            if (obj != null) {
-            	if (obj.containsKey("quiz_submissions")) {
-            		JsonArray ary = (JsonArray)obj.get("quiz_submissions");
-            		for (JsonAbstractValue json_submission:ary) {
-                        CanvasQuizSubmission question = new CanvasQuizSubmission((JsonObject)json_submission);
-                        add(question);
-                    }
-            	}
+    		// the request is shared with anyone else who wants the same quiz's submissions
+            JsonObject obj = (JsonObject) RequesterSso.apiGetRequest("courses/"+course_id+"/quizzes/"+quiz_id+"/submissions?per_page=100");
+            if ((obj != null) && (obj.containsKey("quiz_submissions"))) {
+                for (JsonAbstractValue json_submission:(JsonArray)obj.get("quiz_submissions")) {
+                    CanvasQuizSubmission question = new CanvasQuizSubmission((JsonObject)json_submission);
+                    add(question);
+                }
             }
         } catch (IOException ex) {
             Logger.getLogger(Assignments.class.getName()).log(Level.SEVERE, null, ex);
@@ -0,0 +1,267 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Collects statistics about the requests made to Canvas, grouped by endpoint template.
+ * <p>
+ * The template of a request is its path relative to the api (or the site), with every
+ * numeric path segment replaced by {id} - for instance, courses/{id}/assignments/{id}/submissions.
+ * For each template the following are recorded: the number of requests made (and how many
+ * of those were answered by an identical request already made during the run), the number
+ * of pages fetched, the bytes received and decoded, the time to the first byte, a histogram
+ * of page latencies and the number of responses with each HTTP status.
+ * <p>
+ * The metrics can be read while the application runs, or written as json at the end of a
+ * run.  If the canvas_ore.metrics_file system property is set, the metrics are written to that
+ * file when a report completes.
+ */
+public class CanvasRequestMetrics {
+    // upper bounds (in milliseconds) of the buckets of the latency histogram.  The last
+    // bucket holds everything slower.
+    static final long[] LATENCY_BUCKETS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    static private final Pattern ID_SEGMENT = Pattern.compile("(?<=^|/)\\d+(?=/|$)");
+
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * The statistics for a single endpoint template
+     */
+    public static final class Endpoint {
+        private long requests = 0;
+        private long coalesced = 0;
+        private long pages = 0;
+        private long wireBytes = 0;
+        private long decodedBytes = 0;
+        private long ttfbTotal = 0;
+        private long ttfbMax = 0;
+        private long latencyTotal = 0;
+        private long latencyMax = 0;
+        private final long[] histogram = new long[LATENCY_BUCKETS_MS.length + 1];
+        private final TreeMap<Integer, Long> statuses = new TreeMap<>();
+
+        /**
+         * returns the number of requests made for the endpoint (a request may span many pages)
+         */
+        public synchronized long getRequests() {return requests;}
+
+        /**
+         * returns the number of requests that were answered by an identical request made
+         * earlier in the run, rather than by canvas
+         */
+        public synchronized long getCoalesced() {return coalesced;}
+
+        /**
+         * returns the number of pages fetched from canvas (including those refused or
+         * answered from the response cache)
+         */
+        public synchronized long getPages() {return pages;}
+
+        /**
+         * returns the number of body bytes received from canvas
+         */
+        public synchronized long getWireBytes() {return wireBytes;}
+
+        /**
+         * returns the number of body bytes after decompression
+         */
+        public synchronized long getDecodedBytes() {return decodedBytes;}
+
+        /**
+         * returns the mean time from sending a request to receiving the response headers (ms)
+         */
+        public synchronized double getMeanTimeToFirstByte() {
+            return (pages == 0) ? 0.0 : ttfbTotal / 1e6 / pages;
+        }
+
+        /**
+         * returns the longest time from sending a request to receiving the response headers (ms)
+         */
+        public synchronized double getMaxTimeToFirstByte() {return ttfbMax / 1e6;}
+
+        /**
+         * returns the mean time from sending a request to reading the last byte of the
+         * response (ms)
+         */
+        public synchronized double getMeanLatency() {
+            return (pages == 0) ? 0.0 : latencyTotal / 1e6 / pages;
+        }
+
+        /**
+         * returns the longest time from sending a request to reading the last byte of the
+         * response (ms)
+         */
+        public synchronized double getMaxLatency() {return latencyMax / 1e6;}
+
+        /**
+         * returns the total time spent on requests for this endpoint (ms).  Requests that
+         * overlap are each counted in full.
+         */
+        public synchronized double getTotalLatency() {return latencyTotal / 1e6;}
+
+        /**
+         * returns the latency histogram.  Element i holds the number of pages whose latency
+         * was at most LATENCY_BUCKETS_MS[i] (and more than the previous bound).  The last
+         * element holds the pages slower than every bound.
+         */
+        public synchronized long[] getLatencyHistogram() {return histogram.clone();}
+
+        /**
+         * returns the number of responses received with each HTTP status
+         */
+        public synchronized Map<Integer, Long> getStatusCounts() {return new TreeMap<>(statuses);}
+
+        /*
+         * helper function to record a single page
+         */
+        private synchronized void addPage(int status, long ttfb, long latency, long wire, long decoded) {
+            pages++;
+            wireBytes += wire;
+            decodedBytes += decoded;
+            ttfbTotal += ttfb;
+            ttfbMax = Math.max(ttfbMax, ttfb);
+            latencyTotal += latency;
+            latencyMax = Math.max(latencyMax, latency);
+            long ms = latency / 1000000;
+            int bucket = 0;
+            while ((bucket < LATENCY_BUCKETS_MS.length) && (ms > LATENCY_BUCKETS_MS[bucket])) bucket++;
+            histogram[bucket]++;
+            statuses.merge(status, 1L, Long::sum);
+        }
+
+        /*
+         * helper function to convert the statistics to a json object
+         */
+        private synchronized JsonObject toJson() {
+            JsonObject obj = new JsonObject();
+            obj.put("requests", JsonValue.number(requests));
+            obj.put("coalesced", JsonValue.number(coalesced));
+            obj.put("pages", JsonValue.number(pages));
+            obj.put("wire_bytes", JsonValue.number(wireBytes));
+            obj.put("decoded_bytes", JsonValue.number(decodedBytes));
+            obj.put("ttfb_mean_ms", JsonValue.number(getMeanTimeToFirstByte()));
+            obj.put("ttfb_max_ms", JsonValue.number(getMaxTimeToFirstByte()));
+            obj.put("latency_mean_ms", JsonValue.number(getMeanLatency()));
+            obj.put("latency_max_ms", JsonValue.number(getMaxLatency()));
+            obj.put("latency_total_ms", JsonValue.number(getTotalLatency()));
+            JsonArray buckets = new JsonArray();
+            for (int i = 0; i < histogram.length; i++) {
+                JsonObject bucket = new JsonObject();
+                if (i < LATENCY_BUCKETS_MS.length) {
+                    bucket.put("le", JsonValue.number(LATENCY_BUCKETS_MS[i]));
+                } else {
+                    bucket.put("gt", JsonValue.number(LATENCY_BUCKETS_MS[i - 1]));
+                }
+                bucket.put("count", JsonValue.number(histogram[i]));
+                buckets.add(bucket);
+            }
+            obj.put("latency_histogram_ms", buckets);
+            JsonObject status = new JsonObject();
+            for (Map.Entry<Integer, Long> entry : statuses.entrySet()) {
+                status.put(entry.getKey().toString(), JsonValue.number(entry.getValue()));
+            }
+            obj.put("status", status);
+            return obj;
+        }
+    }
+
+    /**
+     * returns the endpoint template of the specified url
+     */
+    static String template(String url) {
+        String path = url;
+        if (path.startsWith(RequesterSso.API_URL)) {
+            path = path.substring(RequesterSso.API_URL.length());
+        } else if (path.startsWith(RequesterSso.BASE_URL)) {
+            path = path.substring(RequesterSso.BASE_URL.length());
+        }
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+        return ID_SEGMENT.matcher(path).replaceAll("{id}");
+    }
+
+    /*
+     * helper function to find the statistics for the template of a url
+     */
+    private Endpoint endpoint(String url) {
+        return endpoints.computeIfAbsent(template(url), k -> new Endpoint());
+    }
+
+    /**
+     * record that a request has been made for the specified url
+     *
+     * @param url - the url requested
+     * @param coalesced - true if the request was answered by an identical request made
+     *                  earlier in the run
+     */
+    public void recordRequest(String url, boolean coalesced) {
+        Endpoint endpoint = endpoint(url);
+        synchronized (endpoint) {
+            endpoint.requests++;
+            if (coalesced) endpoint.coalesced++;
+        }
+    }
+
+    /**
+     * record a single page that has been read from canvas
+     *
+     * @param url - the url of the page
+     * @param status - the HTTP status of the response
+     * @param ttfb - the time from sending the request to receiving the headers (ns)
+     * @param latency - the time from sending the request to reading the last byte (ns)
+     * @param wireBytes - the number of body bytes received
+     * @param decodedBytes - the number of body bytes after decompression
+     */
+    public void recordPage(String url, int status, long ttfb, long latency, long wireBytes, long decodedBytes) {
+        endpoint(url).addPage(status, ttfb, latency, wireBytes, decodedBytes);
+    }
+
+    /**
+     * returns the statistics for each endpoint template, sorted by template
+     */
+    public Map<String, Endpoint> getEndpoints() {
+        return new TreeMap<>(endpoints);
+    }
+
+    /**
+     * forget all the statistics collected so far
+     */
+    public void reset() {
+        endpoints.clear();
+    }
+
+    /**
+     * returns the statistics as a json object, keyed by endpoint template
+     */
+    public JsonObject toJson() {
+        JsonObject obj = new JsonObject();
+        for (Map.Entry<String, Endpoint> entry : getEndpoints().entrySet()) {
+            obj.put(entry.getKey(), entry.getValue().toJson());
+        }
+        return obj;
+    }
+
+    /**
+     * write the statistics to the specified file as json
+     */
+    public void writeToFile(File file) throws IOException {
+        try (BufferedWriter bw = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            toJson().writeToFile(bw);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Schedules requests to Canvas so that as many run at once as Canvas will allow without
+ * throttling us.
+ * <p>
+ * Canvas meters API use with a leaky bucket and reports the state of the bucket in the
+ * X-Rate-Limit-Remaining header of each response (and the cost of the request in the
+ * X-Request-Cost header).  When the bucket is empty, requests are refused with a 403 or
+ * 429 response.  The scheduler adjusts the number of requests that may be outstanding using
+ * additive increase / multiplicative decrease: the limit grows slowly while the bucket is
+ * healthy, shrinks when the bucket runs low, and is halved whenever a request is throttled.
+ * Throttled requests are queued again and retried with exponential backoff.
+ * <p>
+ * A request holds its place under the limit until the body of its response has been read
+ * or closed, so the limit bounds the bodies being downloaded, not just the requests waiting
+ * for headers.  The exception is a request made ahead of the one its caller is reading: its
+ * response may wait, unread, behind a request that is being retried, so it gives up its place
+ * as soon as its headers arrive.  Otherwise the responses waiting to be read could fill every
+ * place under the limit and the request they are waiting behind would never be sent.
+ */
+public class CanvasRequestScheduler {
+    static final int MIN_CONCURRENCY = 1;
+    static final int MAX_CONCURRENCY = 16;
+    static final int INITIAL_CONCURRENCY = 6;
+
+    // when fewer than this many units remain in the rate limit bucket, stop growing and
+    // begin to shrink the concurrency limit
+    static final double LOW_WATER_MARK = 200.0;
+    static final double BACKOFF_FACTOR = 0.5;
+    static final double LOW_WATER_FACTOR = 0.9;
+
+    static final int MAX_RETRIES = 6;
+    static final long BASE_RETRY_DELAY_MS = 500;
+    static final long MAX_RETRY_DELAY_MS = 30000;
+
+    private double limit = INITIAL_CONCURRENCY;
+    private int active = 0;
+    private double lastRemaining = Double.NaN;
+    private double lastCost = Double.NaN;
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+
+    /**
+     * A single request - how to send it, the future for its result and the number of times
+     * it has been throttled.
+     */
+    private final class Attempt implements Runnable {
+        final Supplier<CompletableFuture<HttpResponse<InputStream>>> sender;
+        final boolean readAhead;
+        final CompletableFuture<HttpResponse<InputStream>> result = new CompletableFuture<>();
+        int retries = 0;
+
+        Attempt(Supplier<CompletableFuture<HttpResponse<InputStream>>> sender, boolean readAhead) {
+            this.sender = sender;
+            this.readAhead = readAhead;
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                // the request was cancelled while it was queued
+                finished();
+                return;
+            }
+            CompletableFuture<HttpResponse<InputStream>> sent = sender.get();
+            result.whenComplete((r, ex) -> sent.cancel(true));
+            sent.whenComplete((response, ex) -> {
+                if (ex != null) {
+                    finished();
+                    result.completeExceptionally(ex);
+                } else if (isThrottled(response) && (retries < MAX_RETRIES)) {
+                    throttled(response);
+                    CanvasTransport.discard(response);
+                    retry(this, response);
+                } else if (isThrottled(response)) {
+                    // out of retries - the throttled response is returned, but it still
+                    // shrinks the limit
+                    throttled(response);
+                    if (!result.complete(response)) CanvasTransport.discard(response);
+                } else {
+                    HttpResponse<InputStream> held = succeeded(response, readAhead);
+                    // a response that arrives after the request was cancelled is released
+                    if (!result.complete(held)) CanvasTransport.discard(held);
+                }
+            });
+        }
+    }
+
+    /**
+     * submit a request.  The request is sent once the number of outstanding requests is
+     * below the current limit.
+     *
+     * @param sender - sends the request when called
+     * @return a future that completes with the response.  If the request is still being
+     *   throttled after MAX_RETRIES attempts, the throttled response is returned (and the
+     *   limit is halved, as it is whenever a request is throttled).
+     */
+    public CompletableFuture<HttpResponse<InputStream>> submit(Supplier<CompletableFuture<HttpResponse<InputStream>>> sender) {
+        return submit(sender, false);
+    }
+
+    /**
+     * submit a request.  The request is sent once the number of outstanding requests is
+     * below the current limit.
+     *
+     * @param sender - sends the request when called
+     * @param readAhead - true if the response may not be read until the responses to other
+     *                  requests have been.  The request then gives up its place under the
+     *                  limit when its headers arrive, rather than when its body is finished.
+     * @return a future that completes with the response.  If the request is still being
+     *   throttled after MAX_RETRIES attempts, the throttled response is returned (and the
+     *   limit is halved, as it is whenever a request is throttled).
+     */
+    public CompletableFuture<HttpResponse<InputStream>> submit(Supplier<CompletableFuture<HttpResponse<InputStream>>> sender, boolean readAhead) {
+        Attempt attempt = new Attempt(sender, readAhead);
+        synchronized (this) {
+            queue.add(attempt);
+        }
+        dispatch();
+        return attempt.result;
+    }
+
+    /*
+     * helper function to start queued requests while there is room under the limit.
+     * The requests are started outside the lock.
+     */
+    private void dispatch() {
+        while (true) {
+            Runnable next;
+            synchronized (this) {
+                if ((queue.isEmpty()) || (active >= (int)limit)) return;
+                next = queue.remove();
+                active++;
+            }
+            next.run();
+        }
+    }
+
+    /*
+     * helper function to release the slot held by a request that has completed
+     */
+    private void finished() {
+        synchronized (this) {
+            active--;
+        }
+        dispatch();
+    }
+
+    /*
+     * helper function to record the rate limit headers of a response and grow or shrink the
+     * limit accordingly.  Unless the request was made ahead of the one being read, it keeps
+     * its slot while its body downloads, so the response is returned with a body that
+     * releases the slot once it has been read to its end or closed.
+     */
+    private HttpResponse<InputStream> succeeded(HttpResponse<InputStream> response, boolean readAhead) {
+        synchronized (this) {
+            lastCost = headerValue(response, "X-Request-Cost");
+            lastRemaining = headerValue(response, "X-Rate-Limit-Remaining");
+            if ((!Double.isNaN(lastRemaining)) && (lastRemaining < LOW_WATER_MARK)) {
+                limit = Math.max(MIN_CONCURRENCY, limit * LOW_WATER_FACTOR);
+            } else {
+                limit = Math.min(MAX_CONCURRENCY, limit + 1.0 / limit);
+            }
+        }
+        if (readAhead) {
+            finished();
+            return response;
+        }
+        return new FilteredResponse(response, new SlotInputStream(response.body()));
+    }
+
+    /**
+     * The body of a response, which releases the slot held by its request once the body has
+     * been read to its end or closed
+     */
+    private final class SlotInputStream extends FilterInputStream {
+        private boolean released = false;
+
+        SlotInputStream(InputStream in) {
+            super(in);
+        }
+
+        /*
+         * helper function to release the slot the first time the body is finished with
+         */
+        private void release() {
+            synchronized (this) {
+                if (released) return;
+                released = true;
+            }
+            finished();
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) release();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) release();
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                release();
+            }
+        }
+    }
+
+    /*
+     * helper function to shrink the limit after a request has been throttled
+     */
+    private void throttled(HttpResponse<InputStream> response) {
+        synchronized (this) {
+            lastRemaining = headerValue(response, "X-Rate-Limit-Remaining");
+            limit = Math.max(MIN_CONCURRENCY, limit * BACKOFF_FACTOR);
+            active--;
+        }
+        dispatch();
+    }
+
+    /*
+     * helper function to queue a throttled request again once its backoff delay has passed
+     */
+    private void retry(Attempt attempt, HttpResponse<InputStream> response) {
+        long delay = Math.min(MAX_RETRY_DELAY_MS, BASE_RETRY_DELAY_MS << attempt.retries);
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        double retryAfter = headerValue(response, "Retry-After");
+        if (!Double.isNaN(retryAfter)) delay = Math.max(delay, (long)(retryAfter * 1000));
+        attempt.retries++;
+        Logger.getLogger(CanvasRequestScheduler.class.getName()).log(Level.FINE,
+                "request throttled by canvas (status {0}), retry {1} in {2} ms",
+                new Object[] {response.statusCode(), attempt.retries, delay});
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+            synchronized (this) {
+                queue.addFirst(attempt);
+            }
+            dispatch();
+        });
+    }
+
+    /**
+     * returns true if canvas refused the request because the rate limit was exceeded
+     */
+    static boolean isThrottled(HttpResponse<?> response) {
+        if (response.statusCode() == 429) return true;
+        if (response.statusCode() != 403) return false;
+        double remaining = headerValue(response, "X-Rate-Limit-Remaining");
+        return (!Double.isNaN(remaining)) && (remaining <= 0.0);
+    }
+
+    /*
+     * helper function to read a numeric header.  Returns NaN if the header is missing or
+     * not a number.
+     */
+    static private double headerValue(HttpResponse<?> response, String name) {
+        try {
+            return response.headers().firstValue(name).map(Double::parseDouble).orElse(Double.NaN);
+        } catch (NumberFormatException ignored) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * returns the current limit on the number of outstanding requests
+     */
+    public synchronized int getConcurrencyLimit() {return (int)limit;}
+
+    /**
+     * returns the number of requests currently outstanding
+     */
+    public synchronized int getActiveCount() {return active;}
+
+    /**
+     * returns the value of X-Rate-Limit-Remaining from the most recent response, or NaN
+     * if no response has reported it
+     */
+    public synchronized double getLastRemaining() {return lastRemaining;}
+
+    /**
+     * returns the value of X-Request-Cost from the most recent response, or NaN if no
+     * response has reported it
+     */
+    public synchronized double getLastCost() {return lastCost;}
+}
@@ -0,0 +1,415 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent, size-limited cache of Canvas responses, keyed by url.
+ * <p>
+ * The body of each cacheable response is saved to disk along with its validators (ETag and
+ * Last-Modified) and Link header.  When the same url is requested again, the validators are
+ * sent with the request; if Canvas answers 304 (Not Modified), the saved body is returned in
+ * place of the response.  When the cache grows beyond its size limit, the least recently
+ * used entries are removed.
+ * <p>
+ * The cache holds student grades and submissions, so its directory is readable only by its
+ * owner.  The cache may be moved with the canvas_ore.cache_dir system property, or turned
+ * off altogether by setting the canvas_ore.disable_cache system property to true.
+ */
+public class CanvasResponseCache {
+    static final long MAX_CACHE_BYTES = 256L * 1024 * 1024;
+    static private final String BODY_SUFFIX = ".body";
+    static private final String META_SUFFIX = ".meta";
+
+    private final File directory;
+    private final long maxBytes;
+    private long totalBytes = 0;
+    private boolean loaded = false;
+    private boolean enabled = true;
+
+    // the cache entries in least recently used order
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * A single cached response
+     */
+    static final class Entry {
+        final String name;
+        final String etag;
+        final String lastModified;
+        final String link;
+        final long size;
+
+        Entry(String name, String etag, String lastModified, String link, long size) {
+            this.name = name;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.link = link;
+            this.size = size;
+        }
+    }
+
+    /**
+     * constructor - create a cache stored in the specified directory
+     * @param directory - the directory to store cached responses in, or null if responses
+     *                  should not be cached
+     * @param maxBytes - the maximum total size of the cached response bodies
+     */
+    public CanvasResponseCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (directory == null) enabled = false;
+    }
+
+    /**
+     * returns the location of the cache - the directory named by the canvas_ore.cache_dir
+     * system property, or by default a directory within the user's home directory.  Returns
+     * null if the canvas_ore.disable_cache system property is true.
+     */
+    static File defaultDirectory() {
+        if (Boolean.getBoolean("canvas_ore.disable_cache")) return null;
+        String configured = System.getProperty("canvas_ore.cache_dir");
+        if ((configured != null) && (!configured.isEmpty())) return new File(configured);
+        return new File(new File(System.getProperty("user.home"), ".canvas_ore"), "cache");
+    }
+
+    /*
+     * helper function to load the cache index from disk the first time the cache is used.
+     * Entries are ordered by the time they were last used.
+     */
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        if (!enabled) return;
+        if ((!directory.isDirectory()) && (!directory.mkdirs())) {
+            Logger.getLogger(CanvasResponseCache.class.getName()).log(Level.WARNING,
+                    "response cache disabled - unable to create {0}", directory);
+            enabled = false;
+            return;
+        }
+        // the cached responses hold student data, so only the owner may read them
+        //noinspection ResultOfMethodCallIgnored
+        directory.setReadable(false, false);
+        //noinspection ResultOfMethodCallIgnored
+        directory.setReadable(true, true);
+        //noinspection ResultOfMethodCallIgnored
+        directory.setExecutable(false, false);
+        //noinspection ResultOfMethodCallIgnored
+        directory.setExecutable(true, true);
+        File[] metaFiles = directory.listFiles((dir, name) -> name.endsWith(META_SUFFIX));
+        if (metaFiles == null) return;
+        ArrayList<File> files = new ArrayList<>(List.of(metaFiles));
+        files.sort(Comparator.comparingLong(File::lastModified));
+        for (File metaFile:files) {
+            Properties meta = new Properties();
+            try (InputStream in = new FileInputStream(metaFile)) {
+                meta.load(in);
+            } catch (IOException ex) {
+                continue;
+            }
+            String name = metaFile.getName().substring(0, metaFile.getName().length() - META_SUFFIX.length());
+            File bodyFile = new File(directory, name + BODY_SUFFIX);
+            if (!bodyFile.isFile()) continue;
+            Entry entry = new Entry(name, meta.getProperty("etag"), meta.getProperty("last_modified"),
+                    meta.getProperty("link"), bodyFile.length());
+            entries.put(meta.getProperty("url"), entry);
+            totalBytes += entry.size;
+        }
+        evict();
+    }
+
+    /*
+     * helper function to create a file name for the specified url
+     */
+    static private String nameFor(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b:digest) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /*
+     * helper function to remove the least recently used entries until the cache fits
+     */
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while ((totalBytes > maxBytes) && (it.hasNext())) {
+            Entry entry = it.next();
+            it.remove();
+            remove(entry);
+        }
+    }
+
+    /*
+     * helper function to delete the files for an entry that is no longer in the index
+     */
+    private void remove(Entry entry) {
+        totalBytes -= entry.size;
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory, entry.name + BODY_SUFFIX).delete();
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory, entry.name + META_SUFFIX).delete();
+    }
+
+    /**
+     * returns the cache entry for the specified url, or null if there is none
+     */
+    public synchronized Entry lookup(String url) {
+        load();
+        if (!enabled) return null;
+        return entries.get(url);
+    }
+
+    /**
+     * add the validators of a cached response to a request for the same url
+     */
+    static void addValidators(HttpRequest.Builder builder, Entry entry) {
+        if (entry == null) return;
+        if (entry.etag != null) builder.header("If-None-Match", entry.etag);
+        if (entry.lastModified != null) builder.header("If-Modified-Since", entry.lastModified);
+    }
+
+    /**
+     * process a response received from canvas.
+     * <p>
+     * If canvas reported that the cached response is still valid, the cached body is returned
+     * instead.  If the response can be cached, it is returned with a body that saves the
+     * response to the cache as it is read.  Otherwise, the response is returned unchanged.
+     * <p>
+     * If the cached body can no longer be read (for instance, because the entry was evicted
+     * after its validators were sent), the 304 response is closed and null is returned, and
+     * the url should be requested again without validators.
+     *
+     * @param url - the url that was requested
+     * @param entry - the entry whose validators were sent with the request, or null
+     * @param response - the response received
+     */
+    public HttpResponse<InputStream> process(String url, Entry entry, HttpResponse<InputStream> response) {
+        if ((response.statusCode() == 304) && (entry != null)) {
+            try {
+                response.body().close();
+            } catch (IOException ignored) {
+            }
+            try {
+                return new CachedResponse(response, entry, touch(url, entry));
+            } catch (IOException ex) {
+                forget(url, entry);
+                return null;
+            }
+        }
+        if (response.statusCode() != 200) return response;
+        Optional<String> etag = response.headers().firstValue("ETag");
+        Optional<String> lastModified = response.headers().firstValue("Last-Modified");
+        if (etag.isEmpty() && lastModified.isEmpty()) return response;
+        synchronized (this) {
+            if (!enabled) return response;
+        }
+        try {
+            String name = nameFor(url);
+            File temp = File.createTempFile(name, ".tmp", directory);
+            Entry newEntry = new Entry(name, etag.orElse(null), lastModified.orElse(null),
+                    response.headers().firstValue("Link").orElse(null), 0);
+            return new FilteredResponse(response, new CachingInputStream(response.body(), temp, url, newEntry));
+        } catch (IOException ex) {
+            return response;
+        }
+    }
+
+    /*
+     * helper function to mark an entry as recently used and open its body
+     */
+    private InputStream touch(String url, Entry entry) throws IOException {
+        synchronized (this) {
+            entries.get(url);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory, entry.name + META_SUFFIX).setLastModified(System.currentTimeMillis());
+        return new FileInputStream(new File(directory, entry.name + BODY_SUFFIX));
+    }
+
+    /*
+     * helper function to remove an entry whose body can no longer be read
+     */
+    private synchronized void forget(String url, Entry entry) {
+        if (entries.get(url) != entry) return;
+        entries.remove(url);
+        remove(entry);
+    }
+
+    /*
+     * helper function to add a completely read response to the cache
+     */
+    private void commit(String url, Entry entry, File temp) {
+        File bodyFile = new File(directory, entry.name + BODY_SUFFIX);
+        File metaFile = new File(directory, entry.name + META_SUFFIX);
+        Entry sized = new Entry(entry.name, entry.etag, entry.lastModified, entry.link, temp.length());
+        synchronized (this) {
+            Entry previous = entries.remove(url);
+            if (previous != null) totalBytes -= previous.size;
+            try {
+                Files.move(temp.toPath(), bodyFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Properties meta = new Properties();
+                meta.setProperty("url", url);
+                if (sized.etag != null) meta.setProperty("etag", sized.etag);
+                if (sized.lastModified != null) meta.setProperty("last_modified", sized.lastModified);
+                if (sized.link != null) meta.setProperty("link", sized.link);
+                try (OutputStream out = new FileOutputStream(metaFile)) {
+                    meta.store(out, null);
+                }
+            } catch (IOException ex) {
+                //noinspection ResultOfMethodCallIgnored
+                bodyFile.delete();
+                return;
+            }
+            entries.put(url, sized);
+            totalBytes += sized.size;
+            evict();
+        }
+    }
+
+    /**
+     * remove every entry from the cache
+     */
+    public synchronized void clear() {
+        load();
+        for (Entry entry:entries.values()) remove(entry);
+        entries.clear();
+    }
+
+    /**
+     * returns the total size of the cached response bodies
+     */
+    public synchronized long getSize() {
+        load();
+        return totalBytes;
+    }
+
+    /**
+     * An input stream that copies everything read from it to a temporary file.  If the stream
+     * is read to its end, the copy is added to the cache when the stream is closed.  If it is
+     * closed before then (because the reader gave up on the response, or it was cancelled),
+     * the rest of the body is not downloaded and the copy is discarded.
+     */
+    private final class CachingInputStream extends FilterInputStream {
+        private final OutputStream copy;
+        private final File temp;
+        private final String url;
+        private final Entry entry;
+        private boolean failed = false;
+        private boolean complete = false;
+        private boolean closed = false;
+
+        CachingInputStream(InputStream in, File temp, String url, Entry entry) throws IOException {
+            super(in);
+            this.temp = temp;
+            this.url = url;
+            this.entry = entry;
+            this.copy = new FileOutputStream(temp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) write(new byte[] {(byte)b}, 0, 1);
+            else complete = true;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) write(b, off, n);
+            else if (n < 0) complete = true;
+            return n;
+        }
+
+        /*
+         * helper function to copy bytes to the temporary file.  A failure to write the copy
+         * does not affect the reader.
+         */
+        private void write(byte[] b, int off, int len) {
+            if (failed) return;
+            try {
+                copy.write(b, off, len);
+            } catch (IOException ex) {
+                failed = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                try {
+                    copy.close();
+                } catch (IOException ex) {
+                    failed = true;
+                }
+                if ((failed) || (!complete)) {
+                    //noinspection ResultOfMethodCallIgnored
+                    temp.delete();
+                } else {
+                    commit(url, entry, temp);
+                }
+            }
+        }
+    }
+
+    /**
+     * A response built from a cache entry in place of a 304 (Not Modified) response.  The
+     * response reports status 200 and carries the Link header of the cached response.
+     */
+    private static final class CachedResponse extends FilteredResponse {
+        final HttpHeaders headers;
+
+        CachedResponse(HttpResponse<InputStream> response, Entry entry, InputStream body) {
+            super(response, body);
+            TreeMap<String, List<String>> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            map.putAll(response.headers().map());
+            if (entry.link != null) map.put("Link", List.of(entry.link));
+            this.headers = HttpHeaders.of(map, (name, value) -> true);
+        }
+
+        @Override
+        public int statusCode() {return 200;}
+
+        @Override
+        public HttpHeaders headers() {return headers;}
+    }
+}
@@ -6,7 +6,7 @@ package edu.asu.dlsandy.canvas_ore;
  */
 
 
-import java.util.Map;
+import java.io.IOException;
 import java.util.TreeMap;
 
 /**
@@ -16,6 +16,7 @@ public class CanvasSubmission {
     final String  id;
     double  score;
     final String  user_id;
+    final String  assignment_id;
     boolean grade_matches; 
     double  entered_score; 
     final boolean late;
@@ -31,68 +32,104 @@ public class CanvasSubmission {
     // This tree map holds the rubric rating IDs associated with each rubric row
     final TreeMap<String, String> rubric_rating_ids;
     /**
-     * Constructor - initialize the instance from information contained in the 
-     *               specified JsonObject.
-     * @param obj - JsonObject that contains the initialization information
+     * Constructor - initialize the instance by reading a submission object from a
+     *               JsonReader.  Only the members that are needed are read; the rest
+     *               (comments, attachments, submission bodies, etc.) are skipped.
+     * @param in - JsonReader positioned at the start of the submission object
      */
-    CanvasSubmission(JsonObject obj) {
-        id = obj.getValue("id");
-
-        score = obj.getDouble("score");
-        user_id = obj.getValue("user_id");
-        attempt = obj.getInteger("attempt");
-        if ((obj.containsKey("submission_type"))&&(obj.getValue("submission_type")==null)) {
-            missing = true;
-        } else {
-            missing = false;
-        }
-        if (obj.containsKey("excused")) {
-            excused = obj.getBoolean("excused");
-        } else {
-            excused = false;
-        }
+    CanvasSubmission(JsonReader in) throws IOException {
+        String id = null;
+        String user_id = null;
+        String assignment_id = null;
+        double score = 0.0;
+        double entered_score = 0.0;
+        boolean has_entered_score = false;
+        int attempt = 0;
+        boolean missing = false;
+        boolean excused = false;
+        boolean late = false;
         grade_matches = true;
-        if (obj.containsKey("grade_matches_current_submission")) {
-            grade_matches = obj.getBoolean("grade_matches_current_submission");
-        }
-        entered_score = score;
         rubric_scores = new TreeMap<>();
         rubric_rating_ids = new TreeMap<>();
 
-        if (obj.containsKey("entered_score"))
-        {
-            // this line takes care of grade overrides
-            score = entered_score;
-            entered_score = obj.getDouble("entered_score");
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id" -> id = in.nextString();
+                case "score" -> score = in.nextDouble();
+                case "user_id" -> user_id = in.nextString();
+                case "assignment_id" -> assignment_id = in.nextString();
+                case "attempt" -> attempt = in.nextInt();
+                case "submission_type" -> missing = (in.nextString() == null);
+                case "excused" -> excused = in.nextBoolean();
+                case "grade_matches_current_submission" -> grade_matches = in.nextBoolean();
+                case "entered_score" -> {
+                    entered_score = in.nextDouble();
+                    has_entered_score = true;
+                }
+                case "late" -> late = in.nextBoolean();
+                case "rubric_assessment" -> readRubricAssessment(in);
+                default -> in.skipValue();
+            }
         }
+        in.endObject();
+
+        this.id = id;
+        this.user_id = user_id;
+        this.assignment_id = assignment_id;
+        this.attempt = attempt;
+        this.missing = missing;
+        this.excused = excused;
+        this.late = late;
+        this.score = score;
+        // this takes care of grade overrides
+        this.entered_score = has_entered_score ? entered_score : score;
+
         // special case
         // for assessment purposes, the student performance is unknown
         if (excused) {
-            score = Double.NaN;
-            entered_score = Double.NaN;
+            this.score = Double.NaN;
+            this.entered_score = Double.NaN;
+            rubric_scores.replaceAll((criterion_id, points) -> Double.NaN);
         }
-        late = obj.getBoolean("late");
-        JsonObject json_rubric_scores = (JsonObject)obj.get("rubric_assessment");
-        if (json_rubric_scores != null) {
-            // the json rubric scores will be an object where each key is the ID of 
-            // a rubric assessment item, and the value will be an object that 
-            // contains rating_id, comments and points.
-            for(Map.Entry<String, JsonAbstractValue> entry : json_rubric_scores.entrySet()) {
-               String criterion_id = entry.getKey();
-               JsonObject rubric_obj = (JsonObject)entry.getValue();
-               if (rubric_obj==null) continue;
-                // special cases: excused or missing when a submission is expected
-                // for assessment purposes, the student performance is unknown
-                double rubric_points = rubric_obj.getDouble("points");
-                if (excused) {
-                    rubric_points = Double.NaN;
+    }
+
+    /*
+     * helper function to read the rubric assessment of the submission.  The assessment is
+     * an object where each key is the ID of a rubric assessment item, and the value is an
+     * object that contains rating_id, comments and points.
+     */
+    private void readRubricAssessment(JsonReader in) throws IOException {
+        if (in.peek() != JsonReader.Token.BEGIN_OBJECT) {
+            in.skipValue();
+            return;
+        }
+        in.beginObject();
+        while (in.hasNext()) {
+            String criterion_id = in.nextName();
+            if (in.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                in.skipValue();
+                continue;
+            }
+            double rubric_points = 0.0;
+            String rating_id = null;
+            boolean empty = true;
+            in.beginObject();
+            while (in.hasNext()) {
+                empty = false;
+                switch (in.nextName()) {
+                    case "points" -> rubric_points = in.nextDouble();
+                    case "rating_id" -> rating_id = in.nextString();
+                    default -> in.skipValue();
                 }
-               rubric_scores.put(criterion_id, rubric_points);
-               rubric_rating_ids.put(criterion_id, rubric_obj.getValue("rating_id"));
             }
+            in.endObject();
+            rubric_scores.put(criterion_id, rubric_points);
+            rubric_rating_ids.put(criterion_id, empty ? "" : rating_id);
         }
+        in.endObject();
     }
-    
+
     /**
      * returns true if this grade matches the one that is used in the grade book, otherwise, false
      */
@@ -113,6 +150,11 @@ public class CanvasSubmission {
      */
     public String getUserId() {return user_id;}
 
+    /**
+     * returns the canvas id of the assignment this submission was made for
+     */
+    public String getAssignmentId() {return assignment_id;}
+
     /**
      * returns the score entered for this submission (see Canvas LMS API for more information)
      */
@@ -7,9 +7,10 @@ package edu.asu.dlsandy.canvas_ore;
 
 
 
-import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.Serial;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -20,6 +21,9 @@ public class CanvasSubmissions extends ArrayList<CanvasSubmission> {
 	@Serial
     private static final long serialVersionUID = 1L;
 
+    // the largest number of assignments requested at once from the course-wide submissions api
+    static final int BULK_BATCH_SIZE = 50;
+
 	/**
 	 * constructor - create and initialize the list by querying the canvas LMS api
 	 * @param course_id - the canvas id of the associated course
@@ -27,21 +31,38 @@ public class CanvasSubmissions extends ArrayList<CanvasSubmission> {
 	 */
 	public CanvasSubmissions(String course_id,String assignment_id)  {
         try {
-            JsonArray jsonArray;
-            jsonArray = (JsonArray) RequesterSso.apiGetRequest("courses/"+course_id+"/assignments/"+assignment_id+"/submissions?include[]=rubric_assessment&per_page=100");
-            if (jsonArray != null) init(jsonArray);
-        } catch (IOException ex) {
+            for (CanvasSubmission submission:pages(course_id, assignment_id)) {
+                add(submission);
+            }
+        } catch (UncheckedIOException ex) {
             Logger.getLogger(Assignments.class.getName()).log(Level.SEVERE, null, ex);
         }
     }  
     
-    /*
-     * helper function to create and initialize all the submission objects
+    /**
+     * returns a lazy, page-at-a-time view of the submissions (including rubric assessments)
+     * for the specified assignment.  Each submission is read directly from the response.
+     * @param course_id - the canvas id of the associated course
+     * @param assignment_id - the canvas id of the associated assignment
+     */
+    static CanvasPages<CanvasSubmission> pages(String course_id, String assignment_id) {
+        return new CanvasPages<>("courses/"+course_id+"/assignments/"+assignment_id+"/submissions?include[]=rubric_assessment&per_page=100", null, CanvasSubmission::new);
+    }
+
+    /**
+     * returns a lazy, page-at-a-time view of the submissions (including rubric assessments)
+     * of every student in the course for each of the specified assignments.  The submissions
+     * for all the assignments arrive in a single stream; use CanvasSubmission.getAssignmentId()
+     * to tell them apart.
+     * @param course_id - the canvas id of the associated course
+     * @param assignment_ids - the canvas ids of the assignments.  Canvas limits the length of
+     *                       a request, so no more than BULK_BATCH_SIZE ids should be given.
      */
-    private void init(JsonArray json_submissions) {
-        for (JsonAbstractValue json_submission:json_submissions) {
-            CanvasSubmission submission = new CanvasSubmission((JsonObject)json_submission);
-            add(submission);
+    static CanvasPages<CanvasSubmission> coursePages(String course_id, Collection<String> assignment_ids) {
+        StringBuilder uri = new StringBuilder("courses/"+course_id+"/students/submissions?student_ids[]=all&include[]=rubric_assessment&per_page=100");
+        for (String assignment_id:assignment_ids) {
+            uri.append("&assignment_ids[]=").append(assignment_id);
         }
-    }    
+        return new CanvasPages<>(uri.toString(), null, CanvasSubmission::new);
+    }
 }
@@ -0,0 +1,74 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A cache of the teams (user groups) of each group set in each course.
+ * <p>
+ * Group assignments that use the same group set share its teams.  The teams of a group set
+ * are loaded once per run: the first assignment that needs them loads them, and any other
+ * assignment that needs them at the same time waits for that load to complete rather than
+ * starting its own.
+ */
+public class CanvasTeamCache {
+    // the teams of each group set, keyed by course id and group category id
+    static private final ConcurrentHashMap<String, CompletableFuture<CanvasUserGroups>> teams = new ConcurrentHashMap<>();
+
+    /**
+     * returns the teams of the specified group set, loading them from canvas if they have
+     * not been loaded already during this run
+     *
+     * @param course_id - the canvas id of the course
+     * @param group_category_id - the canvas id of the group set (group category)
+     * @return the teams of the group set, or null if the calling thread was interrupted
+     *    while loading them or waiting for them to load
+     */
+    static public CanvasUserGroups get(String course_id, String group_category_id) {
+        String key = course_id+"/"+group_category_id;
+        CompletableFuture<CanvasUserGroups> loading = new CompletableFuture<>();
+        CompletableFuture<CanvasUserGroups> shared = teams.putIfAbsent(key, loading);
+        if (shared == null) {
+            try {
+                CanvasUserGroups groups = new CanvasUserGroups(course_id, group_category_id);
+                if (Thread.currentThread().isInterrupted()) {
+                    // the load was cancelled part way through - the partial teams are not
+                    // kept or handed to anyone.  Any caller waiting for them loads them again.
+                    teams.remove(key, loading);
+                    loading.cancel(false);
+                    return null;
+                }
+                loading.complete(groups);
+            } catch (RuntimeException | Error ex) {
+                teams.remove(key, loading);
+                loading.completeExceptionally(ex);
+                throw ex;
+            }
+            return loading.join();
+        }
+        try {
+            return shared.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | CancellationException ex) {
+            // the load failed or was cancelled - try again
+            return get(course_id, group_category_id);
+        }
+    }
+
+    /**
+     * forget the teams loaded during the previous run
+     */
+    static public void reset() {
+        teams.clear();
+    }
+}
@@ -0,0 +1,398 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The transport used for every request made to Canvas.
+ * <p>
+ * A single HttpClient is shared by all requests so that connections are kept alive between
+ * requests and, when the server supports it, multiplexed over HTTP/2.  Authentication cookies
+ * are supplied by the cookie manager that was used when the user logged in.  The number of
+ * requests outstanding at once is governed by a CanvasRequestScheduler, and responses are
+ * revalidated against a CanvasResponseCache.
+ * <p>
+ * Canvas is asked to compress its responses.  Compressed bodies are decompressed as they are
+ * read, and the number of bytes received and decoded is logged (at level FINE) for every
+ * request.  The timing and size of every page are recorded in a CanvasRequestMetrics.
+ */
+public class CanvasTransport {
+    static private final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    static private final Duration REQUEST_TIMEOUT = Duration.ofMinutes(2);
+
+    // the longest to wait for a request, including the time spent queued by the scheduler
+    // and any retries after it has been throttled
+    static private final Duration AWAIT_TIMEOUT = Duration.ofMinutes(15);
+
+    static private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .cookieHandler(RequesterSso.cookieManager)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .build();
+
+    // every request is sent through the scheduler so that the rate limit is respected
+    static private final CanvasRequestScheduler scheduler = new CanvasRequestScheduler();
+
+    // responses are revalidated against the disk cache rather than downloaded again
+    static private final CanvasResponseCache cache =
+            new CanvasResponseCache(CanvasResponseCache.defaultDirectory(), CanvasResponseCache.MAX_CACHE_BYTES);
+
+    // statistics for every page read from canvas, by endpoint
+    static private final CanvasRequestMetrics metrics = new CanvasRequestMetrics();
+
+    // totals over all requests of the bytes received and the bytes they decoded to
+    static private final AtomicLong wireBytes = new AtomicLong();
+    static private final AtomicLong decodedBytes = new AtomicLong();
+
+    /**
+     * create a GET request for the specified url that asks Canvas for a json response
+     *
+     * @param url - the url to request
+     * @param cached - the cached response for the url (if any), whose validators are sent
+     *               with the request
+     */
+    static private HttpRequest buildGetRequest(String url, CanvasResponseCache.Entry cached) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+        CanvasResponseCache.addValidators(builder, cached);
+        return builder.build();
+    }
+
+    /**
+     * send a GET request to canvas without waiting for the response
+     *
+     * @param url - the url to request
+     * @return a future that completes as soon as the response headers arrive.  The body
+     *    of the response can then be read from its input stream as it arrives.  If canvas
+     *    reports that a cached copy of the response is still valid, the cached copy is
+     *    returned instead.  Cancelling the future cancels the request.
+     */
+    static public CompletableFuture<HttpResponse<InputStream>> getAsync(String url) {
+        return getAsync(url, false);
+    }
+
+    /**
+     * send a GET request to canvas without waiting for the response
+     *
+     * @param url - the url to request
+     * @param readAhead - true if the request is made ahead of others whose responses will be
+     *                  read first (see CanvasRequestScheduler)
+     * @return a future that completes as soon as the response headers arrive (see getAsync(url))
+     */
+    static public CompletableFuture<HttpResponse<InputStream>> getAsync(String url, boolean readAhead) {
+        return send(url, cache.lookup(url), readAhead);
+    }
+
+    /*
+     * helper function to send a GET request for the specified url
+     *
+     * @param url - the url to request
+     * @param cached - the cached response for the url (if any), whose validators are sent
+     *               with the request
+     * @param readAhead - true if the request is made ahead of others whose responses will be
+     *                  read first
+     */
+    static private CompletableFuture<HttpResponse<InputStream>> send(String url, CanvasResponseCache.Entry cached, boolean readAhead) {
+        HttpRequest request = buildGetRequest(url, cached);
+        CompletableFuture<HttpResponse<InputStream>> scheduled = scheduler.submit(() -> {
+            CanvasEvents.Page event = new CanvasEvents.Page(url);
+            event.begin();
+            long sent = System.nanoTime();
+            return relay(client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()),
+                    response -> CompletableFuture.completedFuture(decode(url, sent, event, response)));
+        }, readAhead);
+        return relay(scheduled, response -> {
+            HttpResponse<InputStream> processed = cache.process(url, cached, response);
+            // if the cached copy was evicted after its validators were sent, ask again
+            // without them
+            if (processed == null) return send(url, null, readAhead);
+            return CompletableFuture.completedFuture(processed);
+        });
+    }
+
+    /*
+     * helper function that returns a future for the response to a request, passed through
+     * the specified function once it arrives.  Unlike thenApply(), cancelling the future
+     * returned cancels the request itself, and a response that arrives after the future has
+     * been cancelled is closed, so that its connection is released and the page is recorded.
+     *
+     * @param request - the future for the response to the request
+     * @param then - returns a future for the response that completes the future returned
+     */
+    static private CompletableFuture<HttpResponse<InputStream>> relay(CompletableFuture<HttpResponse<InputStream>> request,
+            Function<HttpResponse<InputStream>, CompletableFuture<HttpResponse<InputStream>>> then) {
+        CompletableFuture<HttpResponse<InputStream>> result = new CompletableFuture<>();
+        result.whenComplete((r, ex) -> {
+            if (ex instanceof CancellationException) request.cancel(true);
+        });
+        request.whenComplete((response, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            CompletableFuture<HttpResponse<InputStream>> next;
+            try {
+                next = then.apply(response);
+            } catch (RuntimeException failure) {
+                discard(response);
+                result.completeExceptionally(failure);
+                return;
+            }
+            result.whenComplete((r, nextEx) -> {
+                if (nextEx instanceof CancellationException) next.cancel(true);
+            });
+            next.whenComplete((nextResponse, nextEx) -> {
+                if (nextEx != null) {
+                    result.completeExceptionally(nextEx);
+                } else if (!result.complete(nextResponse)) {
+                    discard(nextResponse);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * release a response whose body will not be read, so that its connection (and the
+     * scheduler slot held by its request) is released
+     */
+    static void discard(HttpResponse<InputStream> response) {
+        try {
+            response.body().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Reads the body of a response, decompressing it if it was compressed, and counts the
+     * bytes received and the bytes they decoded to.  The decompressor is not created until
+     * the body is first read, so that the thread that delivers the response headers never
+     * waits for the body to arrive.
+     */
+    private static final class DecodingInputStream extends InputStream {
+        private final InputStream raw;
+        private final String encoding;
+        private final String url;
+        private final int status;
+        private final long sent;
+        private final long firstByte = System.nanoTime();
+        private final CanvasEvents.Page event;
+        private InputStream decoded = null;
+        private long received = 0;
+        private long produced = 0;
+        private boolean closed = false;
+
+        DecodingInputStream(InputStream raw, String encoding, String url, int status, long sent, CanvasEvents.Page event) {
+            this.encoding = encoding;
+            this.url = url;
+            this.status = status;
+            this.sent = sent;
+            this.event = event;
+            // count the bytes as they come off the wire, before they are decompressed
+            this.raw = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    int c = raw.read();
+                    if (c >= 0) received++;
+                    return c;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = raw.read(b, off, len);
+                    if (n > 0) received += n;
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    raw.close();
+                }
+            };
+        }
+
+        /*
+         * helper function to create the decompressor on first use
+         */
+        private InputStream decoded() throws IOException {
+            if (decoded == null) {
+                switch (encoding) {
+                    case "" :
+                    case "identity" :
+                        decoded = raw;
+                        break;
+                    case "gzip" :
+                    case "x-gzip" :
+                        decoded = new GZIPInputStream(raw, 8192);
+                        break;
+                    case "deflate" :
+                        decoded = new InflaterInputStream(raw);
+                        break;
+                    default:
+                        throw new IOException("unsupported content encoding: " + encoding);
+                }
+            }
+            return decoded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = decoded().read();
+            if (c >= 0) produced++;
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = decoded().read(b, off, len);
+            if (n > 0) produced += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                if (decoded != null) {
+                    decoded.close();
+                } else {
+                    raw.close();
+                }
+            } finally {
+                long now = System.nanoTime();
+                wireBytes.addAndGet(received);
+                decodedBytes.addAndGet(produced);
+                metrics.recordPage(url, status, firstByte - sent, now - sent, received, produced);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.status = status;
+                    event.timeToFirstByte = firstByte - sent;
+                    event.wireBytes = received;
+                    event.decodedBytes = produced;
+                    event.commit();
+                }
+                Logger.getLogger(CanvasTransport.class.getName()).log(Level.FINE,
+                        "{0}: {1} bytes received, {2} bytes decoded ({3})",
+                        new Object[] {url, received, produced, encoding.isEmpty() ? "identity" : encoding});
+            }
+        }
+    }
+
+    /**
+     * A response whose compressed body has been replaced by the decompressed body.  The
+     * Content-Encoding and Content-Length headers no longer describe the body, so they are
+     * removed.
+     */
+    private static final class DecodedResponse extends FilteredResponse {
+        final HttpHeaders headers;
+
+        DecodedResponse(HttpResponse<InputStream> response, InputStream body) {
+            super(response, body);
+            this.headers = HttpHeaders.of(response.headers().map(), (name, value) ->
+                    !name.equalsIgnoreCase("Content-Encoding") && !name.equalsIgnoreCase("Content-Length"));
+        }
+
+        @Override
+        public HttpHeaders headers() {return headers;}
+    }
+
+    /*
+     * helper function to replace the body of a response with one that decompresses (if
+     * necessary) and counts the bytes of the body as they are read.  The page is recorded in
+     * the metrics when the body is closed.
+     *
+     * @param url - the url that was requested
+     * @param sent - the time (System.nanoTime()) at which the request was sent
+     * @param event - the flight recorder event for the page, begun when the request was sent
+     * @param response - the response received
+     */
+    static private HttpResponse<InputStream> decode(String url, long sent, CanvasEvents.Page event, HttpResponse<InputStream> response) {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("")
+                .trim().toLowerCase(Locale.ROOT);
+        InputStream body = new DecodingInputStream(response.body(), encoding, url, response.statusCode(), sent, event);
+        if (encoding.isEmpty()) return new FilteredResponse(response, body);
+        return new DecodedResponse(response, body);
+    }
+
+    /**
+     * returns the scheduler that all requests are sent through
+     */
+    static public CanvasRequestScheduler getScheduler() {return scheduler;}
+
+    /**
+     * returns the disk cache of canvas responses
+     */
+    static public CanvasResponseCache getCache() {return cache;}
+
+    /**
+     * returns the statistics collected for the requests made to canvas
+     */
+    static public CanvasRequestMetrics getMetrics() {return metrics;}
+
+    /**
+     * returns the total number of body bytes received from canvas (before decompression)
+     */
+    static public long getWireBytes() {return wireBytes.get();}
+
+    /**
+     * returns the total number of body bytes received from canvas after decompression
+     */
+    static public long getDecodedBytes() {return decodedBytes.get();}
+
+    /**
+     * wait for a pending request to complete.  If the calling thread is interrupted while
+     * waiting, or the request does not complete within AWAIT_TIMEOUT, the request is
+     * cancelled.
+     *
+     * @param future - the future representing the pending request
+     * @return the result of the request
+     */
+    static public <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get(AWAIT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            throw new HttpTimeoutException("canvas request timed out");
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("canvas request interrupted");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) throw (IOException)ex.getCause();
+            if (ex.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException)ex.getCause()).getCause();
+            throw new IOException(ex.getCause());
+        }
+    }
+}
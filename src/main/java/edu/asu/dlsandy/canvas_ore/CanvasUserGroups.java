@@ -10,63 +10,101 @@ package edu.asu.dlsandy.canvas_ore;
 import java.io.IOException;
 import java.io.Serial;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * representation of a list of all user groups in a specific course
+ * representation of a list of user groups in a specific course.  The list may hold every
+ * group in the course, or only the groups of a single group set (group category).
+ * <p>
+ * The members of the groups are loaded concurrently, and an index from user id to group is
+ * built once, so that finding the group of a user does not search every group.
  */
 public class CanvasUserGroups extends ArrayList<CanvasUserGroup> {
 	@Serial
     private static final long serialVersionUID = 1L;
 
+	// the group of each user, keyed by user id
+	private final HashMap<String, CanvasUserGroup> groupOfUser = new HashMap<>();
+
 	/**
 	 * constructor - initialize the user groups by querying canvas
 	 * @param course_id - the associated course ID
 	 */
 	public CanvasUserGroups(String course_id) {
+        load("courses/"+course_id+"/groups?per_page=100");
+    }
+
+	/**
+	 * constructor - initialize the user groups of a single group set by querying canvas
+	 * @param course_id - the associated course ID
+	 * @param group_category_id - the ID of the group set (group category).  If null, every
+	 *                          group in the course is loaded.
+	 */
+	public CanvasUserGroups(String course_id, String group_category_id) {
+        if ((group_category_id==null)||(group_category_id.equalsIgnoreCase("null"))) {
+            load("courses/"+course_id+"/groups?per_page=100");
+        } else {
+            load("group_categories/"+group_category_id+"/groups?per_page=100");
+        }
+    }
+
+	/*
+	 * helper function to load the groups listed by the specified api request
+	 */
+    private void load(String uri) {
         try {
             JsonArray jsonArray;
-            jsonArray = (JsonArray) RequesterSso.apiGetRequest("courses/"+course_id+"/groups?per_page=100");
+            jsonArray = (JsonArray) RequesterSso.apiGetRequest(uri);
             if (jsonArray != null) init(jsonArray);
         } catch (IOException ex) {
             Logger.getLogger(Assignments.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
-    
-	/* 
-	 * helper function to initialize each group based on information from canvas
+
+	/*
+	 * helper function to initialize each group based on information from canvas.  The
+	 * members of every group are requested at once, and the groups are added in the order
+	 * canvas lists them.
 	 */
     private void init(JsonArray array) {
-        try {
-            for (JsonAbstractValue jsonGroup:array) {
+        CanvasUserGroup[] groups = new CanvasUserGroup[array.size()];
+        ArrayList<Integer> indices = new ArrayList<>();
+        for (int i=0; i<array.size(); i++) indices.add(i);
+        LoadingScope.forEach(indices, i -> {
+            String id = array.get(i).getValue("id");
+            try {
                 // retrieve the users for a specific group
-                JsonArray members = (JsonArray)RequesterSso.apiGetRequest("groups/"+jsonGroup.getValue("id")+"/users?per_page=100");
+                JsonArray members = (JsonArray)RequesterSso.apiGetRequest("groups/"+id+"/users?per_page=100");
                 if (members != null) {
                     CanvasUserGroup group = new CanvasUserGroup();
-                    group.setId(jsonGroup.getValue("id"));
+                    group.setId(id);
                     for (JsonAbstractValue member:members) {
-                        group.add(member.getValue("id"));                        
+                        group.add(member.getValue("id"));
                     }
-                    add(group);
+                    groups[i] = group;
                 }
+            } catch (IOException ex) {
+                Logger.getLogger(Assignments.class.getName()).log(Level.SEVERE, null, ex);
             }
-        } catch (IOException ex) {
-            Logger.getLogger(Assignments.class.getName()).log(Level.SEVERE, null, ex);
+        });
+        for (CanvasUserGroup group:groups) {
+            if (group == null) continue;
+            add(group);
+            // a user in more than one group belongs to the first one listed
+            for (String userId:group) groupOfUser.putIfAbsent(userId, group);
         }
     }
-            
+
     /**
-     *  returns the group id associated with a specific user id 
+     *  returns the group associated with a specific user id, or null if the user is not
+     *  in any of the groups
      * <p>
-     *  Note: this assumes that there is only one group set within canvas
+     *  Note: if the list holds the groups of more than one group set, this assumes that the
+     *  user belongs to only one of them
     */
     public CanvasUserGroup getAssociatedGroup(String userId) {
-        for (CanvasUserGroup group:this) {
-            if (group.contains(userId)) {
-                return group;
-            }
-        }
-        return null;
+        return groupOfUser.get(userId);
     }
 }
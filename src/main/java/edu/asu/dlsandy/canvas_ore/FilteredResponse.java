@@ -0,0 +1,58 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+import javax.net.ssl.SSLSession;
+
+/**
+ * A response whose body is replaced by another input stream (for instance, one that
+ * decompresses or copies the original body as it is read).  Everything else is taken from
+ * the original response.
+ */
+class FilteredResponse implements HttpResponse<InputStream> {
+    final HttpResponse<InputStream> response;
+    final InputStream body;
+
+    /**
+     * constructor - wrap the response, replacing its body with the specified stream
+     */
+    FilteredResponse(HttpResponse<InputStream> response, InputStream body) {
+        this.response = response;
+        this.body = body;
+    }
+
+    @Override
+    public int statusCode() {return response.statusCode();}
+
+    @Override
+    public HttpRequest request() {return response.request();}
+
+    @Override
+    public Optional<HttpResponse<InputStream>> previousResponse() {return response.previousResponse();}
+
+    @Override
+    public HttpHeaders headers() {return response.headers();}
+
+    @Override
+    public InputStream body() {return body;}
+
+    @Override
+    public Optional<SSLSession> sslSession() {return response.sslSession();}
+
+    @Override
+    public URI uri() {return response.uri();}
+
+    @Override
+    public HttpClient.Version version() {return response.version();}
+}
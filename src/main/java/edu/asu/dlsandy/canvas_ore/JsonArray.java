@@ -33,7 +33,7 @@ public class JsonArray extends ArrayList<JsonAbstractValue> implements JsonAbstr
     @Override
     /*
      * returns a string value of the specified element where the specifier
-     * is of the form [index].specifier
+     * is of the form index.specifier
      */
     public String getValue(String specifier) {
         if (isEmpty()) return "";
@@ -45,77 +45,43 @@ public class JsonArray extends ArrayList<JsonAbstractValue> implements JsonAbstr
             this.forEach((obj) -> sb.append(obj.getValue("")));
             return sb.toString();
         }
-        // use the leftmost part of the specifier as the key
-        String[] key = specifier.split("[.]",2);
-        int index = Integer.parseInt(key[0]);
-        if (index<size()) {
-            return get(index).getValue(key[1]);
-        }
-        return "";
+        return JsonPath.of(specifier).getValue(this);
     }
 
     @Override
     /*
      * returns a boolean value of the specified element where the specifier
-     * is of the form [index].specifier
+     * is of the form index.specifier
      */
     public boolean getBoolean(String specifier) {
-        if (isEmpty()) return false;
-        // use the leftmost part of the specifier as the key
-        @SuppressWarnings("SuspiciousRegexArgument") String[] key = specifier.split(".",2);
-        int index = Integer.parseInt(key[0]);
-        if (index<size()) {
-            return get(index).getBoolean(key[1]);
-        }
-        return false;    
+        return JsonPath.of(specifier).getBoolean(this);
     }
 
     @Override
     /*
      * returns the object handle of the specified element where the specifier
-     * is of the form [index].specifier
+     * is of the form index.specifier
      */
     public String getHandle(String specifier) {
-        if (isEmpty()) return "";
-        // use the leftmost part of the specifier as the key
-        @SuppressWarnings("SuspiciousRegexArgument") String[] key = specifier.split(".",2);
-        int index = Integer.parseInt(key[0]);
-        if (index<size()) {
-            return get(index).getHandle(key[1]);
-        }
-        return "";    
+        return JsonPath.of(specifier).getValue(this);
     }
 
     @Override
     /*
      * returns the integer value of the specified element where the specifier
-     * is of the form [index].specifier
+     * is of the form index.specifier
      */
     public int getInteger(String specifier) {
-        if (isEmpty()) return 0;
-        // use the leftmost part of the specifier as the key
-        @SuppressWarnings("SuspiciousRegexArgument") String[] key = specifier.split(".",2);
-        int index = Integer.parseInt(key[0]);
-        if (index<size()) {
-            return get(index).getInteger(key[1]);
-        }
-        return 0;    
+        return JsonPath.of(specifier).getInteger(this);
     }
 
     @Override
     /*
      * returns the double value of the specified element where the specifier
-     * is of the form [index].specifier
+     * is of the form index.specifier
      */
     public double getDouble(String specifier) {
-        if (isEmpty()) return 0;
-        // use the leftmost part of the specifier as the key
-        @SuppressWarnings("SuspiciousRegexArgument") String[] key = specifier.split(".",2);
-        int index = Integer.parseInt(key[0]);
-        if (index<size()) {
-            return get(index).getDouble(key[1]);
-        }
-        return 0;    
+        return JsonPath.of(specifier).getDouble(this);
     }
     
     @Override
@@ -8,19 +8,312 @@ package edu.asu.dlsandy.canvas_ore;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serial;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.function.BiConsumer;
 
 
 /**
  * Representation of a Json object element.  This is a concrete implementation of the JavaAbstractValue class.
+ * <p>
+ * Canvas responses hold a great many small objects, so the members of an object are kept
+ * in two flat arrays (keys and values), in the order they were added, rather than in the
+ * entries of a tree or hash map.  Small objects are searched directly.  Once an object holds
+ * more than a few members, a small open-addressed hash table of member positions is kept
+ * as well, so that a lookup compares only the keys that share its hash.
+ * <p>
+ * The members are iterated in the order they were added.  When the object is written to a
+ * file, its members are written in key order, as they always have been, so that files
+ * written for the same data are the same.
  */
-public class JsonObject extends TreeMap<String, JsonAbstractValue> implements JsonAbstractValue {
+public class JsonObject extends AbstractMap<String, JsonAbstractValue> implements JsonAbstractValue, Serializable {
 	@Serial
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
+
+    // objects with at most this many members are searched without a hash table
+    static private final int LINEAR_LIMIT = 8;
+
+    static private final String[] NO_KEYS = new String[0];
+    static private final JsonAbstractValue[] NO_VALUES = new JsonAbstractValue[0];
+
+    // the members are serialized one at a time (see writeObject)
+    private transient String[] keys = NO_KEYS;
+    private transient JsonAbstractValue[] values = NO_VALUES;
+    private transient int size = 0;
+
+    // the hash table of member positions (each plus one, so that zero marks an empty slot),
+    // or null if the object is small enough to search directly
+    private transient int[] table = null;
+
+    /**
+     * constructor - create an empty object
+     */
+    public JsonObject() {
+    }
+
+    /**
+     * constructor - create an empty object with room for the specified number of members
+     */
+    public JsonObject(int capacity) {
+        if (capacity > 0) {
+            keys = new String[capacity];
+            values = new JsonAbstractValue[capacity];
+        }
+    }
+
+    /*
+     * helper function that spreads the bits of a hash code so that keys that differ only
+     * in their high bits do not collide
+     */
+    static private int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /*
+     * helper function that returns the position of the member with the specified key, or
+     * -1 if the object holds no such member
+     */
+    private int indexOf(Object key) {
+        if (table == null) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i].equals(key)) return i;
+            }
+            return -1;
+        }
+        int mask = table.length - 1;
+        int slot = spread(key.hashCode()) & mask;
+        while (true) {
+            int position = table[slot];
+            if (position == 0) return -1;
+            if (keys[position - 1].equals(key)) return position - 1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /*
+     * helper function to add the member at the specified position to the hash table
+     */
+    private void addToTable(int position) {
+        int mask = table.length - 1;
+        int slot = spread(keys[position].hashCode()) & mask;
+        while (table[slot] != 0) slot = (slot + 1) & mask;
+        table[slot] = position + 1;
+    }
+
+    /*
+     * helper function to build the hash table, sized so that it is at most half full, or to
+     * drop it if the object is small enough to search directly
+     */
+    private void buildTable() {
+        if (size <= LINEAR_LIMIT) {
+            table = null;
+            return;
+        }
+        table = new int[Integer.highestOneBit(size * 4 - 1)];
+        for (int i = 0; i < size; i++) addToTable(i);
+    }
+
+    @Override
+    public int size() {return size;}
+
+    @Override
+    public boolean isEmpty() {return size == 0;}
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (key != null) && (indexOf(key) >= 0);
+    }
+
+    @Override
+    public JsonAbstractValue get(Object key) {
+        if (key == null) return null;
+        int i = indexOf(key);
+        return (i < 0) ? null : values[i];
+    }
+
+    @Override
+    public JsonAbstractValue put(String key, JsonAbstractValue value) {
+        Objects.requireNonNull(key);
+        int i = indexOf(key);
+        if (i >= 0) {
+            JsonAbstractValue previous = values[i];
+            values[i] = value;
+            return previous;
+        }
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        if ((table == null) || (size * 2 > table.length)) {
+            if (size > LINEAR_LIMIT) buildTable();
+        } else {
+            addToTable(size - 1);
+        }
+        return null;
+    }
+
+    @Override
+    public JsonAbstractValue remove(Object key) {
+        if (key == null) return null;
+        int i = indexOf(key);
+        if (i < 0) return null;
+        JsonAbstractValue previous = values[i];
+        removeAt(i);
+        return previous;
+    }
+
+    /*
+     * helper function to remove the member at the specified position, keeping the order of
+     * the members that follow it
+     */
+    private void removeAt(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        if (table != null) buildTable();
+    }
+
+    @Override
+    public void clear() {
+        keys = NO_KEYS;
+        values = NO_VALUES;
+        size = 0;
+        table = null;
+    }
+
+    /**
+     * reduces the storage of the object to fit the members it holds.  This is done once
+     * an object has been read, since it will seldom grow after that.
+     */
+    public void trimToSize() {
+        if (size < keys.length) {
+            keys = (size == 0) ? NO_KEYS : Arrays.copyOf(keys, size);
+            values = (size == 0) ? NO_VALUES : Arrays.copyOf(values, size);
+        }
+    }
+
+    /*
+     * serialize the object - the number of members, followed by the key and value of each
+     */
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeObject(keys[i]);
+            out.writeObject(values[i]);
+        }
+    }
+
+    /*
+     * deserialize the object written by writeObject()
+     */
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int count = in.readInt();
+        if (count < 0) throw new InvalidObjectException("negative member count");
+        clear();
+        for (int i = 0; i < count; i++) {
+            put((String)in.readObject(), (JsonAbstractValue)in.readObject());
+        }
+        trimToSize();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super JsonAbstractValue> action) {
+        for (int i = 0; i < size; i++) action.accept(keys[i], values[i]);
+    }
+
+    @Override
+    public Set<Map.Entry<String, JsonAbstractValue>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {return size;}
+
+            @Override
+            public Iterator<Map.Entry<String, JsonAbstractValue>> iterator() {
+                return new Iterator<>() {
+                    private int next = 0;
+                    private boolean removable = false;
+
+                    @Override
+                    public boolean hasNext() {return next < size;}
+
+                    @Override
+                    public Map.Entry<String, JsonAbstractValue> next() {
+                        if (next >= size) throw new NoSuchElementException();
+                        removable = true;
+                        return new Member(next++);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (!removable) throw new IllegalStateException();
+                        removable = false;
+                        removeAt(--next);
+                    }
+                };
+            }
+        };
+    }
+
+    /*
+     * a member of the object, as seen through entrySet().  Setting its value sets the value
+     * held by the object.
+     */
+    private final class Member implements Map.Entry<String, JsonAbstractValue> {
+        private final int position;
+
+        Member(int position) {
+            this.position = position;
+        }
+
+        @Override
+        public String getKey() {return keys[position];}
+
+        @Override
+        public JsonAbstractValue getValue() {return values[position];}
+
+        @Override
+        public JsonAbstractValue setValue(JsonAbstractValue value) {
+            JsonAbstractValue previous = values[position];
+            values[position] = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Map.Entry<?, ?> e) &&
+                    Objects.equals(getKey(), e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {return getKey() + "=" + getValue();}
+    }
 
 	@Override
 	/* 
@@ -72,18 +365,7 @@ public class JsonObject extends TreeMap<String, JsonAbstractValue> implements Js
             }
             return sb.toString();
         }
-        // use the leftmost part of the specifier as the key
-        String[] key = specifier.split("[.]",2);
-        if (containsKey(key[0])) {
-            StringBuilder sb = new StringBuilder();
-            if (key.length>1) {
-                return sb.append(get(key[0]).getValue(key[1])).toString();
-            } else {
-            	if (get(key[0]).getValue("")!=null)	return sb.append(get(key[0]).getValue("")).toString();                
-            	return null;
-            }
-        } 
-        return null;
+        return JsonPath.of(specifier).getValue(this);
     }
 
     @Override
@@ -96,14 +378,7 @@ public class JsonObject extends TreeMap<String, JsonAbstractValue> implements Js
      * 		key.specifier
      */
     public boolean getBoolean(String specifier) {
-        if (isEmpty()) return false;
-        // use the leftmost part of the specifier as the key
-        String[] key = specifier.split("[.]",2);
-        if (containsKey(key[0])) {
-            if (key.length>1) return get(key[0]).getBoolean(key[1]);
-            return get(key[0]).getBoolean("");
-        }
-        return false;
+        return JsonPath.of(specifier).getBoolean(this);
     }
 
     @Override
@@ -125,14 +400,7 @@ public class JsonObject extends TreeMap<String, JsonAbstractValue> implements Js
      * 		key.specifier
      */
     public int getInteger(String specifier) {
-        if (isEmpty()) return 0;
-        // use the leftmost part of the specifier as the key
-        String[] key = specifier.split("[.]",2);
-        if (containsKey(key[0])) {
-            if (key.length>1) return get(key[0]).getInteger(key[1]);
-            return get(key[0]).getInteger("");
-        }
-        return 0;
+        return JsonPath.of(specifier).getInteger(this);
     }
  
     @Override
@@ -145,31 +413,25 @@ public class JsonObject extends TreeMap<String, JsonAbstractValue> implements Js
      * 		key.specifier
      */
     public double getDouble(String specifier) {
-        if (isEmpty()) return 0.0;
-        // use the leftmost part of the specifier as the key
-        String[] key = specifier.split("[.]",2);
-        if (containsKey(key[0])) {
-            if (key.length>1) return get(key[0]).getDouble(key[1]);
-            return get(key[0]).getDouble("");
-        }
-        return 0.0;
+        return JsonPath.of(specifier).getDouble(this);
     }
     
     @Override
     /* 
-     * write the object to a file specified by hte BufferedWriter parameter.
+     * write the object to a file specified by hte BufferedWriter parameter.  The members are
+     * written in key order.
      */
     public void writeToFile(BufferedWriter br) {
         try {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparing(i -> keys[i]));
             br.append('{');
-            boolean isFirst = true;
-            for (Map.Entry<String, JsonAbstractValue> entry: entrySet()) {
-                if (!isFirst) br.append(',');
-                isFirst = false;
-                br.append('"');
-                br.append(entry.getKey());
-                br.append("\":");
-                entry.getValue().writeToFile(br);
+            for (int i = 0; i < size; i++) {
+                if (i > 0) br.append(',');
+                JsonValue.writeString(br, keys[order[i]]);
+                br.append(':');
+                values[order[i]].writeToFile(br);
             }
             br.append('}');
         } catch (IOException ignored) {
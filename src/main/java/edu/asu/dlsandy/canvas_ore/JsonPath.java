@@ -0,0 +1,190 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled specifier for a value held within json objects and arrays.  A specifier is of
+ * the form:
+ * <pre>
+ *     key
+ *     key.specifier
+ *     key[index].specifier
+ *     index.specifier        (within an array)
+ * </pre>
+ * Brackets are only an index if they hold nothing but digits; otherwise they are part of
+ * the key (for instance "foo[]" or "a[b]").  If an object holds a member named key[index],
+ * that member is found rather than the element of key.
+ * The specifier is split into its segments once, when the path is compiled, so that
+ * finding the value does not need to split strings or allocate anything.  Paths are cached,
+ * so a class may either keep the JsonPath for a specifier that it uses often, or simply call
+ * JsonPath.of() each time.
+ * <p>
+ * The value found follows the rules that JsonObject and JsonArray have always used: a key
+ * missing from an object gives a null string (and zero or false), while a path that leads
+ * into an empty object or array, past the end of an array, or into a scalar value gives an
+ * empty string (and zero or false).
+ */
+public class JsonPath {
+    // the largest number of paths that are cached.  Specifiers are almost always constants,
+    // so this is only reached if specifiers are built from data.
+    static private final int CACHE_LIMIT = 4096;
+    static private final ConcurrentHashMap<String, JsonPath> cache = new ConcurrentHashMap<>();
+
+    // stands in for the value found when a path leads somewhere that holds no value, other
+    // than to a key missing from an object
+    static private final JsonValue NOTHING = JsonValue.string("");
+
+    private final String specifier;
+
+    // the key of each segment, and its index (or -1 if the segment is not an index)
+    private final String[] keys;
+    private final int[] indexes;
+
+    // for a key followed by an index, the key and index as written (key[index]), since an
+    // object may hold a member by that name.  Null for any other segment.
+    private final String[] literals;
+
+    /*
+     * constructor - compile the specified specifier
+     */
+    private JsonPath(String specifier) {
+        this.specifier = specifier;
+        ArrayList<String> segments = new ArrayList<>();
+        ArrayList<String> written = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= specifier.length(); i++) {
+            char c = (i < specifier.length()) ? specifier.charAt(i) : '.';
+            if (c == '.') {
+                // the end of a segment - a segment that closes an index has already been added
+                if ((i == start) && (i > 0) && (specifier.charAt(i - 1) == ']')) {
+                    start = i + 1;
+                    continue;
+                }
+                segments.add(specifier.substring(start, i));
+                written.add(null);
+                start = i + 1;
+            } else if ((c == '[') && (isIndex(specifier, i))) {
+                // key[index] - the key and the index are each a segment
+                int close = specifier.indexOf(']', i);
+                if (i > start) {
+                    segments.add(specifier.substring(start, i));
+                    written.add(specifier.substring(start, close + 1));
+                }
+                segments.add(specifier.substring(i + 1, close));
+                written.add(null);
+                i = close;
+                start = i + 1;
+            }
+        }
+        keys = segments.toArray(new String[0]);
+        literals = written.toArray(new String[0]);
+        indexes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) indexes[i] = parseIndex(keys[i]);
+    }
+
+    /**
+     * returns the compiled path for the specified specifier
+     */
+    static public JsonPath of(String specifier) {
+        JsonPath path = cache.get(specifier);
+        if (path != null) return path;
+        path = new JsonPath(specifier);
+        if (cache.size() < CACHE_LIMIT) cache.putIfAbsent(specifier, path);
+        return path;
+    }
+
+    /*
+     * helper function that returns true if the bracket at the specified position of a
+     * specifier opens an index: brackets that hold only digits, followed by the end of the
+     * specifier or a '.'.  Any other bracket is part of a key.
+     */
+    static private boolean isIndex(String specifier, int open) {
+        int close = specifier.indexOf(']', open);
+        if ((close < 0) || (parseIndex(specifier.substring(open + 1, close)) < 0)) return false;
+        return (close + 1 == specifier.length()) || (specifier.charAt(close + 1) == '.');
+    }
+
+    /*
+     * helper function that returns the array index held by a segment, or -1 if the segment
+     * is not an index
+     */
+    static private int parseIndex(String segment) {
+        if ((segment.isEmpty()) || (segment.length() > 9)) return -1;
+        int index = 0;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if ((c < '0') || (c > '9')) return -1;
+            index = index*10 + (c - '0');
+        }
+        return index;
+    }
+
+    /*
+     * helper function to find the value that the path specifies within the root value.
+     * Returns null if a key is missing from an object along the path.
+     */
+    private JsonAbstractValue resolve(JsonAbstractValue root) {
+        JsonAbstractValue node = root;
+        for (int i = 0; i < keys.length; i++) {
+            if (node instanceof JsonObject obj) {
+                if (obj.isEmpty()) return NOTHING;
+                if ((literals[i] != null) && (obj.containsKey(literals[i]))) {
+                    // the object holds a member named key[index]
+                    node = obj.get(literals[i++]);
+                    continue;
+                }
+                node = obj.get(keys[i]);
+                if (node == null) return null;
+            } else if (node instanceof JsonArray ary) {
+                int index = indexes[i];
+                if ((index < 0) || (index >= ary.size())) return NOTHING;
+                node = ary.get(index);
+            } else {
+                return NOTHING;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * returns the string value that the path specifies within the root value
+     */
+    public String getValue(JsonAbstractValue root) {
+        JsonAbstractValue value = resolve(root);
+        return (value == null) ? null : value.getValue("");
+    }
+
+    /**
+     * returns the integer value that the path specifies within the root value
+     */
+    public int getInteger(JsonAbstractValue root) {
+        JsonAbstractValue value = resolve(root);
+        return (value == null) ? 0 : value.getInteger("");
+    }
+
+    /**
+     * returns the double value that the path specifies within the root value
+     */
+    public double getDouble(JsonAbstractValue root) {
+        JsonAbstractValue value = resolve(root);
+        return (value == null) ? 0 : value.getDouble("");
+    }
+
+    /**
+     * returns the boolean value that the path specifies within the root value
+     */
+    public boolean getBoolean(JsonAbstractValue root) {
+        JsonAbstractValue value = resolve(root);
+        return (value != null) && (value.getBoolean(""));
+    }
+
+    @Override
+    public String toString() {return specifier;}
+}
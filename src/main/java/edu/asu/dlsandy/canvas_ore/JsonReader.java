@@ -0,0 +1,376 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Reads json a token at a time, without building JsonAbstractValues for it.  This lets a
+ * class read just the members it needs from a canvas response and skip the rest (submission
+ * comments, attachments, html bodies and so on) without allocating anything for them.
+ * <p>
+ * A typical reader of an object looks like this:
+ * <pre>
+ *     in.beginObject();
+ *     while (in.hasNext()) {
+ *         switch (in.nextName()) {
+ *             case "id" -&gt; id = in.nextString();
+ *             case "score" -&gt; score = in.nextDouble();
+ *             default -&gt; in.skipValue();
+ *         }
+ *     }
+ *     in.endObject();
+ * </pre>
+ * Scalar values are converted the same way that JsonValue converts them, so a class read
+ * with a JsonReader sees the same values that it would see in a JsonObject.  The "while(1);"
+ * guard that canvas prepends to some responses is skipped automatically.
+ */
+public class JsonReader {
+    /**
+     * The kinds of token that may be next in the text
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    /**
+     * Reads a single element of a canvas response from a JsonReader
+     */
+    public interface ElementReader<T> {
+        T read(JsonReader in) throws IOException;
+    }
+
+    static private final String GUARD = "while(1);";
+
+    // the kinds of scope the reader may be within
+    static private final int EMPTY_DOCUMENT = 0;
+    static private final int NONEMPTY_DOCUMENT = 1;
+    static private final int EMPTY_ARRAY = 2;
+    static private final int NONEMPTY_ARRAY = 3;
+    static private final int EMPTY_OBJECT = 4;
+    static private final int DANGLING_NAME = 5;
+    static private final int NONEMPTY_OBJECT = 6;
+
+    private final JsonTokenizer tokenizer;
+    private int[] scopes = new int[16];
+    private int depth = 1;
+    private Token peeked = null;
+
+    /**
+     * constructor - read json from the specified reader
+     */
+    public JsonReader(Reader in) {
+        this(new JsonTokenizer(in));
+    }
+
+    /**
+     * constructor - read json from the specified UTF-8 encoded input stream
+     */
+    public JsonReader(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * constructor - read json from the tokens of the specified tokenizer
+     */
+    public JsonReader(JsonTokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+        scopes[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * returns the tokenizer that the reader reads from
+     */
+    public JsonTokenizer getTokenizer() {return tokenizer;}
+
+    /**
+     * returns the kind of the next token without consuming it
+     */
+    public Token peek() throws IOException {
+        if (peeked != null) return peeked;
+        int c;
+        switch (scopes[depth - 1]) {
+            case EMPTY_DOCUMENT:
+                skipGuard();
+                scopes[depth - 1] = NONEMPTY_DOCUMENT;
+                if (tokenizer.peekToken() < 0) return peeked = Token.END_DOCUMENT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                if (tokenizer.peekToken() >= 0) throw tokenizer.error("unexpected text following value");
+                return peeked = Token.END_DOCUMENT;
+            case EMPTY_ARRAY:
+                if (tokenizer.peekToken() == ']') return peeked = Token.END_ARRAY;
+                scopes[depth - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                if (tokenizer.peekToken() == ']') return peeked = Token.END_ARRAY;
+                tokenizer.expect(',');
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = tokenizer.peekToken();
+                if (c == '}') return peeked = Token.END_OBJECT;
+                if (scopes[depth - 1] == NONEMPTY_OBJECT) {
+                    tokenizer.expect(',');
+                    c = tokenizer.peekToken();
+                }
+                if (c != '"') throw tokenizer.error("name expected");
+                scopes[depth - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                tokenizer.expect(':');
+                scopes[depth - 1] = NONEMPTY_OBJECT;
+                break;
+        }
+        c = tokenizer.peekToken();
+        switch (c) {
+            case '{': return peeked = Token.BEGIN_OBJECT;
+            case '[': return peeked = Token.BEGIN_ARRAY;
+            case '"': return peeked = Token.STRING;
+            case 't':
+            case 'f': return peeked = Token.BOOLEAN;
+            case 'n': return peeked = Token.NULL;
+            case -1: throw tokenizer.error("unexpected end of text");
+            default: return peeked = Token.NUMBER;
+        }
+    }
+
+    /*
+     * helper function to skip the "while(1);" guard if it is present
+     */
+    private void skipGuard() throws IOException {
+        if (tokenizer.peekToken() != GUARD.charAt(0)) return;
+        for (int i = 0; i < GUARD.length(); i++) {
+            if (tokenizer.read() != GUARD.charAt(i)) throw tokenizer.error("unexpected leading text");
+        }
+    }
+
+    /*
+     * helper function to consume the next token, which must be of the expected kind
+     */
+    private void consume(Token expected) throws IOException {
+        if (peek() != expected) throw tokenizer.error(expected + " expected but " + peeked + " found");
+        peeked = null;
+    }
+
+    /*
+     * helper function to enter a new object or array
+     */
+    private void push(int scope) {
+        if (depth == scopes.length) {
+            int[] larger = new int[depth * 2];
+            System.arraycopy(scopes, 0, larger, 0, depth);
+            scopes = larger;
+        }
+        scopes[depth++] = scope;
+    }
+
+    /**
+     * consumes the beginning of an object
+     */
+    public void beginObject() throws IOException {
+        consume(Token.BEGIN_OBJECT);
+        tokenizer.expect('{');
+        push(EMPTY_OBJECT);
+    }
+
+    /**
+     * consumes the end of the current object
+     */
+    public void endObject() throws IOException {
+        consume(Token.END_OBJECT);
+        tokenizer.expect('}');
+        depth--;
+    }
+
+    /**
+     * consumes the beginning of an array
+     */
+    public void beginArray() throws IOException {
+        consume(Token.BEGIN_ARRAY);
+        tokenizer.expect('[');
+        push(EMPTY_ARRAY);
+    }
+
+    /**
+     * consumes the end of the current array
+     */
+    public void endArray() throws IOException {
+        consume(Token.END_ARRAY);
+        tokenizer.expect(']');
+        depth--;
+    }
+
+    /**
+     * returns true if the current object or array has another member
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return (token != Token.END_OBJECT) && (token != Token.END_ARRAY) && (token != Token.END_DOCUMENT);
+    }
+
+    /**
+     * consumes and returns the name of the next member of the current object
+     */
+    public String nextName() throws IOException {
+        consume(Token.NAME);
+        return tokenizer.readName();
+    }
+
+    /*
+     * helper function to consume a scalar value and return its text.  Null is returned for
+     * a null value.
+     */
+    private String nextScalar() throws IOException {
+        Token token = peek();
+        String value;
+        if (token == Token.STRING) {
+            value = tokenizer.readString();
+        } else if ((token == Token.NUMBER) || (token == Token.BOOLEAN)) {
+            value = tokenizer.readLiteral();
+        } else if (token == Token.NULL) {
+            tokenizer.readLiteral();
+            value = null;
+        } else {
+            throw tokenizer.error("value expected but " + token + " found");
+        }
+        peeked = null;
+        return value;
+    }
+
+    /**
+     * consumes the next value and returns it as a string, or null if the value is null
+     */
+    public String nextString() throws IOException {
+        return nextScalar();
+    }
+
+    /**
+     * consumes the next value and returns it as a double.  Returns NaN (not a number) if
+     * the value is null, and 0 if the value is not a number.
+     */
+    public double nextDouble() throws IOException {
+        Token token = peek();
+        String value = nextScalar();
+        return switch (token) {
+            case NUMBER -> JsonValue.parseNumber(value);
+            case STRING -> JsonValue.stringToDouble(value);
+            case NULL -> Double.NaN;
+            default -> 0;
+        };
+    }
+
+    /**
+     * consumes the next value and returns it as an integer.  Returns 0 if the value is not
+     * an integer.
+     */
+    public int nextInt() throws IOException {
+        Token token = peek();
+        String value = nextScalar();
+        if ((token == Token.NUMBER) || (token == Token.STRING)) return JsonValue.stringToInteger(value);
+        return 0;
+    }
+
+    /**
+     * consumes the next value and returns it as a boolean.  Returns false unless the value
+     * is true (or the string "true").
+     */
+    public boolean nextBoolean() throws IOException {
+        Token token = peek();
+        String value = nextScalar();
+        if ((token == Token.BOOLEAN) || (token == Token.STRING)) return Boolean.parseBoolean(value);
+        return false;
+    }
+
+    /**
+     * consumes the next value, which must be null
+     */
+    public void nextNull() throws IOException {
+        if (peek() != Token.NULL) throw tokenizer.error("null expected but " + peeked + " found");
+        nextScalar();
+    }
+
+    /**
+     * consumes and discards the next value, including everything that it holds, without
+     * building it.  If the next token is the name of a member, both the name and the value
+     * of the member are skipped.
+     */
+    public void skipValue() throws IOException {
+        if (peek() == Token.NAME) nextName();
+        Token token = peek();
+        if ((token == Token.END_OBJECT) || (token == Token.END_ARRAY) || (token == Token.END_DOCUMENT)) {
+            throw tokenizer.error("value expected but " + token + " found");
+        }
+        tokenizer.skipValue();
+        peeked = null;
+    }
+
+    /**
+     * consumes the next value and returns the JsonAbstractValue that represents it
+     */
+    public JsonAbstractValue readValue() throws IOException {
+        Token token = peek();
+        if ((token == Token.NAME) || (token == Token.END_OBJECT) || (token == Token.END_ARRAY) || (token == Token.END_DOCUMENT)) {
+            throw tokenizer.error("value expected but " + token + " found");
+        }
+        JsonAbstractValue value = tokenizer.readValue();
+        peeked = null;
+        return value;
+    }
+
+    /**
+     * read the elements of a canvas response, handing each to the consumer as soon as it has
+     * been read.
+     *
+     * @param key - if null, the response should hold an array; if it holds any other value,
+     *            that value is read as a single element.  Otherwise, the response should hold
+     *            an object, and the elements of the array stored under this key are read.
+     *            Other members of the object are skipped.
+     * @param reader - reads a single element
+     * @param consumer - the consumer to hand each element to
+     */
+    public <T> void readElements(String key, ElementReader<T> reader, Consumer<T> consumer) throws IOException {
+        Token token = peek();
+        if (token == Token.END_DOCUMENT) return;
+        if (key == null) {
+            if (token != Token.BEGIN_ARRAY) {
+                consumer.accept(reader.read(this));
+            } else {
+                readArray(reader, consumer);
+            }
+        } else if (token != Token.BEGIN_OBJECT) {
+            skipValue();
+        } else {
+            beginObject();
+            while (hasNext()) {
+                if (nextName().equals(key) && (peek() == Token.BEGIN_ARRAY)) {
+                    readArray(reader, consumer);
+                } else {
+                    skipValue();
+                }
+            }
+            endObject();
+        }
+        // read to the end of the text, so that any text following the response is reported
+        // and the whole of the response has been read
+        peek();
+    }
+
+    /*
+     * helper function to read the elements of an array
+     */
+    private <T> void readArray(ElementReader<T> reader, Consumer<T> consumer) throws IOException {
+        beginArray();
+        while (hasNext()) consumer.accept(reader.read(this));
+        endArray();
+    }
+}
@@ -0,0 +1,142 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Builds JsonAbstractValues directly from a character stream as it arrives, rather than
+ * from a completely buffered string.  The values built are the same as those built by
+ * JsonResultFactory.
+ * <p>
+ * When the stream holds an array, its elements can be handed to a consumer one at a time
+ * so that only one element needs to be held in memory at once.  The "while(1);" guard that
+ * canvas prepends to some responses is skipped automatically.
+ */
+public class JsonStreamParser {
+    static private final String GUARD = "while(1);";
+
+    private final JsonTokenizer tokenizer;
+
+    /**
+     * constructor - parse json from the specified reader
+     */
+    public JsonStreamParser(Reader in) {
+        this.tokenizer = new JsonTokenizer(in);
+    }
+
+    /**
+     * constructor - parse json from the specified UTF-8 encoded input stream
+     */
+    public JsonStreamParser(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /*
+     * helper function to skip the "while(1);" guard if it is present
+     */
+    private void skipGuard() throws IOException {
+        if (tokenizer.peekToken() != GUARD.charAt(0)) return;
+        for (int i = 0; i < GUARD.length(); i++) {
+            if (tokenizer.read() != GUARD.charAt(i)) throw tokenizer.error("unexpected leading text");
+        }
+    }
+
+    /**
+     * parse the complete stream.
+     *
+     * @return the value held in the stream, or null if the stream is empty
+     */
+    public JsonAbstractValue parse() throws IOException {
+        CanvasEvents.JsonParse event = new CanvasEvents.JsonParse("stream");
+        event.begin();
+        try {
+            skipGuard();
+            if (tokenizer.peekToken() < 0) return null;
+            JsonAbstractValue value = tokenizer.readValue();
+            // read to the end of the stream, so that the whole of the response has been read
+            tokenizer.expectEnd();
+            return value;
+        } finally {
+            commit(event);
+        }
+    }
+
+    /*
+     * helper function to record a parse with the flight recorder
+     */
+    private void commit(CanvasEvents.JsonParse event) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.characters = tokenizer.getCharacters();
+            event.nodes = tokenizer.getNodes();
+            event.commit();
+        }
+    }
+
+    /**
+     * parse the stream, handing each element of the array it holds to the consumer as soon
+     * as the element has been read.
+     *
+     * @param key - if null, the stream should hold an array; if it holds any other value,
+     *            that value is handed to the consumer whole.  Otherwise, the stream should hold
+     *            an object, and the elements of the array stored under this key are handed to
+     *            the consumer.  Other members of the object are discarded.
+     * @param consumer - the consumer to hand each element to
+     */
+    public void parseElements(String key, Consumer<JsonAbstractValue> consumer) throws IOException {
+        CanvasEvents.JsonParse event = new CanvasEvents.JsonParse("stream");
+        event.begin();
+        try {
+            parseElementsOf(key, consumer);
+            tokenizer.expectEnd();
+        } finally {
+            commit(event);
+        }
+    }
+
+    /*
+     * helper function that does the work of parseElements()
+     */
+    private void parseElementsOf(String key, Consumer<JsonAbstractValue> consumer) throws IOException {
+        skipGuard();
+        int c = tokenizer.peekToken();
+        if (c < 0) return;
+        if (key == null) {
+            if (c == '[') {
+                tokenizer.readElements(consumer);
+            } else {
+                consumer.accept(tokenizer.readValue());
+            }
+            return;
+        }
+        if (c != '{') {
+            tokenizer.skipValue();
+            return;
+        }
+        tokenizer.expect('{');
+        if (tokenizer.peekToken() == '}') {
+            tokenizer.read();
+            return;
+        }
+        do {
+            String name = tokenizer.readString();
+            tokenizer.expect(':');
+            if (name.equals(key) && (tokenizer.peekToken() == '[')) {
+                tokenizer.readElements(consumer);
+            } else {
+                // other members are skipped without building them
+                tokenizer.skipValue();
+            }
+        } while (tokenizer.nextMember('}'));
+    }
+}
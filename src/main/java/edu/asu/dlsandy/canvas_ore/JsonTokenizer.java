@@ -0,0 +1,564 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A single-pass tokenizer for json text held in a character buffer.  The buffer may hold the
+ * complete text, or may be refilled from a reader as the text is consumed.
+ * <p>
+ * The tokenizer accepts the complete json grammar: whitespace between any two tokens,
+ * objects, arrays (nested to any depth), strings, numbers (including negative numbers,
+ * fractions and exponents) and the literals true, false and null.  Escape sequences within
+ * strings are decoded as the string is read, so that each character is examined exactly once.
+ * Malformed text is reported with an IOException giving the offset of the error.
+ */
+public class JsonTokenizer {
+    // the characters that end a run of plain characters within a string: the closing
+    // quote, the start of an escape sequence, and the control characters (which json does
+    // not allow within a string)
+    static private final boolean[] STRING_END = new boolean[128];
+    static {
+        for (int c = 0; c < 0x20; c++) STRING_END[c] = true;
+        STRING_END['"'] = true;
+        STRING_END['\\'] = true;
+    }
+
+    private final Reader in;
+    private final char[] buffer;
+    private int position;
+    private int limit;
+
+    // the start of the token being read, or -1 if no token is being read.  If the token
+    // does not fit within the buffer, or holds escape sequences, it is copied to the
+    // string builder.
+    private int mark = -1;
+    private boolean copied = false;
+    private final StringBuilder token = new StringBuilder();
+
+    // the member names read so far, in an open-addressed hash table.  Canvas repeats the
+    // same names in every element of a response, so the objects that are built share a
+    // single copy of each name.  A name is looked up by its characters in the buffer, so a
+    // name that has been read before is not built again.
+    private String[] names = new String[64];
+    private int nameCount = 0;
+
+    // the number of members in the last object read at each depth of nesting.  The elements
+    // of an array usually share the same members, so an object is given room for as many
+    // members as the last object read at its depth.
+    private int[] objectSizes = new int[8];
+    private int depth = 0;
+
+    // offset of the start of the buffer within the text, used when reporting errors
+    private long offset = 0;
+
+    // statistics for the flight recorder
+    private long characters = 0;
+    private long nodes = 0;
+
+    /**
+     * constructor - tokenize the characters of a buffer
+     * @param buffer - the buffer holding the json text
+     * @param start - the index of the first character of the text
+     * @param length - the number of characters in the text
+     */
+    public JsonTokenizer(char[] buffer, int start, int length) {
+        this.in = null;
+        this.buffer = buffer;
+        this.position = start;
+        this.limit = start + length;
+        this.offset = -start;
+        this.characters = length;
+    }
+
+    /**
+     * constructor - tokenize the characters read from a reader.  Characters are read as they
+     * are needed.
+     */
+    public JsonTokenizer(Reader in) {
+        this.in = in;
+        this.buffer = new char[8192];
+        this.position = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * returns the number of characters read so far
+     */
+    public long getCharacters() {return characters;}
+
+    /**
+     * returns the number of values (objects, arrays and scalars) read so far
+     */
+    public long getNodes() {return nodes;}
+
+    /*
+     * helper function to refill the buffer once every character in it has been consumed.
+     * Returns false at the end of the text.
+     */
+    private boolean fill() throws IOException {
+        if (in == null) return false;
+        if (mark >= 0) {
+            copyToken();
+            mark = 0;
+        }
+        offset += limit;
+        position = 0;
+        limit = in.read(buffer, 0, buffer.length);
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        characters += limit;
+        return true;
+    }
+
+    /**
+     * returns the next character in the text without consuming it, or -1 at the end of
+     * the text
+     */
+    public int peek() throws IOException {
+        if ((position == limit) && (!fill())) return -1;
+        return buffer[position];
+    }
+
+    /**
+     * consumes and returns the next character in the text, or -1 at the end of the text
+     */
+    public int read() throws IOException {
+        if ((position == limit) && (!fill())) return -1;
+        return buffer[position++];
+    }
+
+    /**
+     * skips any whitespace and returns the next character without consuming it, or -1 at
+     * the end of the text
+     */
+    public int peekToken() throws IOException {
+        // json written by canvas seldom holds whitespace, so check for it only once here
+        if (position < limit) {
+            char c = buffer[position];
+            if (c > ' ') return c;
+        }
+        return skipWhitespace();
+    }
+
+    /*
+     * helper function that skips any whitespace and returns the next character without
+     * consuming it, or -1 at the end of the text
+     */
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            if ((position == limit) && (!fill())) return -1;
+            char c = buffer[position];
+            if ((c != ' ') && (c != '\t') && (c != '\n') && (c != '\r')) return c;
+            position++;
+        }
+    }
+
+    /**
+     * skips any whitespace and then consumes the expected character
+     */
+    public void expect(char expected) throws IOException {
+        if (peekToken() != expected) throw error("'" + expected + "' expected");
+        position++;
+    }
+
+    /**
+     * consumes the separator following a member of an object or an element of an array.
+     *
+     * @param close - the character that closes the object or array
+     * @return true if another member follows, or false if the closing character was found
+     */
+    public boolean nextMember(char close) throws IOException {
+        int c = peekToken();
+        if (c < 0) throw error("unexpected end of text");
+        if ((c != ',') && (c != close)) throw error("',' or '" + close + "' expected");
+        position++;
+        return c == ',';
+    }
+
+    /**
+     * returns an exception that reports malformed text at the current position
+     */
+    public IOException error(String message) {
+        return new IOException("malformed json at offset " + (offset + position) + ": " + message);
+    }
+
+    /*
+     * helper function to begin reading a token at the current position
+     */
+    private void beginToken() {
+        mark = position;
+        copied = false;
+    }
+
+    /*
+     * helper function to copy the characters of the token read so far to the string builder
+     */
+    private void copyToken() {
+        if (!copied) {
+            token.setLength(0);
+            copied = true;
+        }
+        token.append(buffer, mark, position - mark);
+    }
+
+    /*
+     * helper function to complete reading a token, returning its characters
+     */
+    private String endToken() {
+        String result;
+        if (copied) {
+            copyToken();
+            result = token.toString();
+        } else {
+            result = new String(buffer, mark, position - mark);
+        }
+        mark = -1;
+        return result;
+    }
+
+    /**
+     * reads a double-quoted string, decoding any escape sequences it holds
+     */
+    public String readString() throws IOException {
+        return scanString(true);
+    }
+
+    /**
+     * reads the double-quoted name of a member.  The same string is returned each time the
+     * same name is read.
+     */
+    public String readName() throws IOException {
+        expect('"');
+        // look the name up in place if it lies within the buffer and holds no escapes
+        char[] buf = buffer;
+        int start = position;
+        int pos = start;
+        int end = limit;
+        int hash = 0;
+        while (pos < end) {
+            char c = buf[pos];
+            if ((c < 128) && (STRING_END[c])) break;
+            hash = 31*hash + c;
+            pos++;
+        }
+        if ((pos < end) && (buf[pos] == '"')) {
+            position = pos + 1;
+            return findName(buf, start, pos - start, hash);
+        }
+
+        // otherwise, read the name from its opening quote as any other string
+        position = start - 1;
+        String name = readString();
+        return findName(name.toCharArray(), 0, name.length(), name.hashCode());
+    }
+
+    /*
+     * helper function that returns the shared copy of a name, adding the name to the table
+     * if it has not been read before
+     *
+     * @param chars - the characters of the name are chars[start .. start+length-1]
+     * @param hash - the hash of the name, as computed by String.hashCode()
+     */
+    private String findName(char[] chars, int start, int length, int hash) {
+        int mask = names.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (true) {
+            String name = names[slot];
+            if (name == null) break;
+            if ((name.hashCode() == hash) && (name.length() == length) && (matches(name, chars, start))) return name;
+            slot = (slot + 1) & mask;
+        }
+        String name = new String(chars, start, length);
+        names[slot] = name;
+        if (++nameCount * 2 > names.length) growNames();
+        return name;
+    }
+
+    /*
+     * helper function that returns true if a name matches the characters that begin at the
+     * start of chars (which holds at least as many characters as the name)
+     */
+    static private boolean matches(String name, char[] chars, int start) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars[start + i]) return false;
+        }
+        return true;
+    }
+
+    /*
+     * helper function to double the size of the name table
+     */
+    private void growNames() {
+        String[] old = names;
+        names = new String[old.length * 2];
+        int mask = names.length - 1;
+        for (String name:old) {
+            if (name == null) continue;
+            int hash = name.hashCode();
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (names[slot] != null) slot = (slot + 1) & mask;
+            names[slot] = name;
+        }
+    }
+
+    /**
+     * skips a double-quoted string without building it
+     */
+    public void skipString() throws IOException {
+        scanString(false);
+    }
+
+    /*
+     * helper function to read a double-quoted string.  If keep is false, the string is
+     * checked but not built, and null is returned.
+     */
+    private String scanString(boolean keep) throws IOException {
+        expect('"');
+        if (keep) beginToken();
+        while (true) {
+            // scan the plain characters held in the buffer
+            char[] buf = buffer;
+            int pos = position;
+            int end = limit;
+            char c = 0;
+            while (pos < end) {
+                c = buf[pos];
+                if ((c < 128) && (STRING_END[c])) break;
+                pos++;
+            }
+            position = pos;
+            if (pos == end) {
+                if (!fill()) throw error("unterminated string");
+                continue;
+            }
+            if (c == '"') {
+                String result = keep ? endToken() : null;
+                position++;
+                return result;
+            }
+            if (c != '\\') throw error("control character in string");
+
+            // copy the characters ahead of the escape sequence and decode it
+            if (keep) {
+                copyToken();
+                mark = -1;
+            }
+            position++;
+            char decoded = readEscape();
+            if (keep) {
+                token.append(decoded);
+                mark = position;
+            }
+        }
+    }
+
+    /*
+     * helper function to decode the escape sequence following a backslash
+     */
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"': return '"';
+            case '\\': return '\\';
+            case '/': return '/';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) throw error("invalid unicode escape");
+                    code = (code << 4) | digit;
+                }
+                return (char)code;
+            case -1: throw error("unterminated string");
+            default: throw error("invalid escape sequence");
+        }
+    }
+
+    /**
+     * reads an unquoted value: a number or one of the literals true, false and null.  The
+     * value is returned as it appears in the text.
+     */
+    public String readLiteral() throws IOException {
+        return scanLiteral(true);
+    }
+
+    /*
+     * helper function to read an unquoted value.  If keep is false, the value is checked
+     * but a number is not built, and null is returned for it.
+     */
+    private String scanLiteral(boolean keep) throws IOException {
+        int c = peekToken();
+        if ((c == 't') || (c == 'f') || (c == 'n')) {
+            String literal = (c == 't') ? "true" : (c == 'f') ? "false" : "null";
+            for (int i = 0; i < literal.length(); i++) {
+                if (read() != literal.charAt(i)) throw error("value expected");
+            }
+            return literal;
+        }
+        if (keep) beginToken();
+        if (c == '-') position++;
+        if (peek() == '0') {
+            // a number may only begin with zero if zero is its whole integer part
+            position++;
+            if (isDigit(peek())) throw error("leading zero in number");
+        } else if (!skipDigits()) {
+            throw error("value expected");
+        }
+        if (peek() == '.') {
+            position++;
+            if (!skipDigits()) throw error("digit expected");
+        }
+        c = peek();
+        if ((c == 'e') || (c == 'E')) {
+            position++;
+            c = peek();
+            if ((c == '+') || (c == '-')) position++;
+            if (!skipDigits()) throw error("digit expected");
+        }
+        return keep ? endToken() : null;
+    }
+
+    /*
+     * helper function to skip a run of digits.  Returns false if there were no digits.
+     */
+    private boolean skipDigits() throws IOException {
+        boolean found = false;
+        while (true) {
+            char[] buf = buffer;
+            int pos = position;
+            int end = limit;
+            while ((pos < end) && (isDigit(buf[pos]))) pos++;
+            if (pos > position) found = true;
+            position = pos;
+            if ((pos < end) || (!fill())) return found;
+        }
+    }
+
+    /*
+     * helper function that returns true if the character is an ascii digit
+     */
+    static private boolean isDigit(int c) {
+        return (c >= '0') && (c <= '9');
+    }
+
+    /**
+     * reads any json value, building the objects, arrays and values that represent it
+     */
+    public JsonAbstractValue readValue() throws IOException {
+        nodes++;
+        int c = peekToken();
+        if (c == '{') {
+            position++;
+            if (depth == objectSizes.length) objectSizes = Arrays.copyOf(objectSizes, depth * 2);
+            JsonObject obj = new JsonObject(objectSizes[depth]);
+            if (peekToken() == '}') {
+                position++;
+                return obj;
+            }
+            depth++;
+            try {
+                do {
+                    String name = readName();
+                    expect(':');
+                    obj.put(name, readValue());
+                } while (nextMember('}'));
+            } finally {
+                depth--;
+            }
+            objectSizes[depth] = obj.size();
+            obj.trimToSize();
+            return obj;
+        }
+        if (c == '[') {
+            JsonArray ary = new JsonArray();
+            readElements(ary::add);
+            return ary;
+        }
+        if (c == '"') {
+            return JsonValue.string(readString());
+        }
+        if (c < 0) throw error("unexpected end of text");
+        String literal = readLiteral();
+        return switch (literal) {
+            case "true" -> JsonValue.TRUE;
+            case "false" -> JsonValue.FALSE;
+            case "null" -> JsonValue.NULL;
+            default -> JsonValue.number(literal);
+        };
+    }
+
+    /**
+     * skips any json value without building it
+     */
+    public void skipValue() throws IOException {
+        int c = peekToken();
+        if (c == '{') {
+            position++;
+            if (peekToken() == '}') {
+                position++;
+                return;
+            }
+            do {
+                skipString();
+                expect(':');
+                skipValue();
+            } while (nextMember('}'));
+            return;
+        }
+        if (c == '[') {
+            position++;
+            if (peekToken() == ']') {
+                position++;
+                return;
+            }
+            do {
+                skipValue();
+            } while (nextMember(']'));
+            return;
+        }
+        if (c == '"') {
+            skipString();
+            return;
+        }
+        if (c < 0) throw error("unexpected end of text");
+        scanLiteral(false);
+    }
+
+    /**
+     * reads an array, handing each of its elements to the consumer as soon as the element
+     * has been read
+     */
+    public void readElements(Consumer<? super JsonAbstractValue> consumer) throws IOException {
+        expect('[');
+        if (peekToken() == ']') {
+            position++;
+            return;
+        }
+        do {
+            consumer.accept(readValue());
+        } while (nextMember(']'));
+    }
+
+    /**
+     * reads the remainder of the text, which must hold only whitespace
+     */
+    public void expectEnd() throws IOException {
+        if (peekToken() >= 0) throw error("unexpected text following value");
+    }
+}
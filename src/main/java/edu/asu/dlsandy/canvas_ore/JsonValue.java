@@ -10,13 +10,34 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 
 /**
- * Represents a concrete JSON value.  Note that this class represents the 
- * all JSON value types as a string.  Getter functions interpret the string as 
- * specific data types.
+ * Represents a concrete JSON value: a string, a number, a boolean or null.
+ * <p>
+ * The type of the value is kept along with it.  A number is parsed once, when the value is
+ * created, and its numeric value is kept so that the getter functions do not need to
+ * interpret the text again.  The text of a number is also kept, so that getValue() returns
+ * the number exactly as canvas sent it (canvas ids are numbers).
  */
 public class JsonValue implements JsonAbstractValue {
+    /**
+     * The types of json value
+     */
+    public enum Type { STRING, NUMBER, BOOLEAN, NULL }
+
+    static public final JsonValue NULL = new JsonValue(Type.NULL, null, Double.NaN, false);
+    static public final JsonValue TRUE = new JsonValue(Type.BOOLEAN, "true", 0, false);
+    static public final JsonValue FALSE = new JsonValue(Type.BOOLEAN, "false", 0, false);
+
+    private final Type type;
+
+    // the text of the value, or null for a null value
     private final String value;
 
+    // the value of a number
+    private final double number;
+
+    // true if the number is an integer that fits within an int
+    private final boolean integer;
+
     @Override
     /*
       diagnostic function to dump the value to the system output device
@@ -25,41 +46,146 @@ public class JsonValue implements JsonAbstractValue {
         for (int i=0;i<indent;i++) System.out.print(" ");
         System.out.println(value);
     }
-    
+
     /**
-     * constructor - create the value and initialize it from the provided string.
+     * constructor - create a string value.  If the string is null, a null value is created.
      */
     public JsonValue(String value) {
-        if (value.equalsIgnoreCase("null")) {
-        	this.value = null;
-        } else {
-        	this.value = value;
+        this((value == null) ? Type.NULL : Type.STRING, value, Double.NaN, false);
+    }
+
+    /*
+     * helper constructor used by the factory functions
+     */
+    private JsonValue(Type type, String value, double number, boolean integer) {
+        this.type = type;
+        this.value = value;
+        this.number = number;
+        this.integer = integer;
+    }
+
+    /**
+     * returns a string value, or the null value if the string is null
+     */
+    static public JsonValue string(String value) {
+        return (value == null) ? NULL : new JsonValue(Type.STRING, value, Double.NaN, false);
+    }
+
+    /**
+     * returns a number value
+     * @param text - the number, as written in json
+     * @throws NumberFormatException if the text is not a number
+     */
+    static public JsonValue number(String text) {
+        long n = parseInteger(text);
+        if (n == NOT_INTEGER) return new JsonValue(Type.NUMBER, text, Double.parseDouble(text), false);
+        return new JsonValue(Type.NUMBER, text, n, (n >= Integer.MIN_VALUE) && (n <= Integer.MAX_VALUE));
+    }
+
+    /**
+     * returns a number value
+     */
+    static public JsonValue number(long number) {
+        return number(Long.toString(number));
+    }
+
+    /**
+     * returns a number value.  Json cannot represent a number that is not finite, so
+     * the null value is returned for NaN (not a number) and infinite values.
+     */
+    static public JsonValue number(double number) {
+        if (!Double.isFinite(number)) return NULL;
+        return number(Double.toString(number));
+    }
+
+    /**
+     * returns a boolean value
+     */
+    static public JsonValue bool(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    /**
+     * returns the type of the value
+     */
+    public Type getType() {return type;}
+
+    // returned by parseInteger() for text that is not a plain integer
+    static private final long NOT_INTEGER = Long.MIN_VALUE;
+
+    /*
+     * helper function to convert the text of a json number that is a plain integer (no
+     * fraction or exponent) of at most 18 characters, without the more general (and slower)
+     * floating point parser.  Returns NOT_INTEGER for any other text.
+     */
+    static private long parseInteger(String text) {
+        int length = text.length();
+        if (length > 18) return NOT_INTEGER;
+        boolean negative = (length > 0) && (text.charAt(0) == '-');
+        int i = negative ? 1 : 0;
+        if (i == length) return NOT_INTEGER;
+        long n = 0;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if ((c < '0') || (c > '9')) return NOT_INTEGER;
+            n = n*10 + (c - '0');
         }
+        return negative ? -n : n;
+    }
+
+    /*
+     * helper function to parse the text of a json number
+     */
+    static double parseNumber(String text) {
+        long n = parseInteger(text);
+        if (n == NOT_INTEGER) return Double.parseDouble(text);
+        return n;
     }
-    
+
+    /*
+     * helper function to interpret a string as a double, as getDouble() does.  Returns 0
+     * if the string is not a number.
+     */
+    static double stringToDouble(String s) {
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException ignored) {
+            return 0;
+        }
+    }
+
+    /*
+     * helper function to interpret a string as an integer, as getInteger() does.  Returns
+     * 0 if the string is not an integer.
+     */
+    static int stringToInteger(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException ignored) {
+            return 0;
+        }
+    }
+
     @Override
     /*
       return the value as a string
      */
     public String  getValue(String specifier) {
-        if (specifier.isEmpty()) {
-        	if ((value == null) || (value.equalsIgnoreCase("null"))) return null;
-        	return value; 
-        }
+        if (specifier.isEmpty()) return value;
         return "";
     }
-    
+
     @Override
     /*
       return the value as an integer
      */
     public int     getInteger(String specifier) {
         if (specifier.isEmpty()) {
-            try {
-                return Integer.parseInt(value); 
-            }
-            catch (NumberFormatException ignored) {
-            }
+            return switch (type) {
+                case NUMBER -> integer ? (int)number : 0;
+                case STRING -> stringToInteger(value);
+                default -> 0;
+            };
         }
         return 0;
     }
@@ -71,29 +197,28 @@ public class JsonValue implements JsonAbstractValue {
      */
     public double  getDouble(String specifier) {
     	if (specifier.isEmpty()) {
-            try {
-            	if (value==null) {
-            		return Double.NaN;
-            	}
-                return Double.parseDouble(value);
-            }
-            catch (NumberFormatException ignored) {
-            }
+            return switch (type) {
+                case NUMBER -> number;
+                case NULL -> Double.NaN;
+                case STRING -> stringToDouble(value);
+                default -> 0;
+            };
         }
         return 0;
     }
-    
+
     @Override
     /*
       return the value as a boolean
      */
     public boolean getBoolean(String specifier) {
         if (specifier.isEmpty()) {
-            return Boolean.parseBoolean(value); 
+            if (type == Type.BOOLEAN) return value.equals("true");
+            if (type == Type.STRING) return Boolean.parseBoolean(value);
         }
-        return false;        
+        return false;
     }
-    
+
     @Override
     /*
       return as a JSON handle represented as a string
@@ -110,20 +235,41 @@ public class JsonValue implements JsonAbstractValue {
      * @return true on success, otherwise false
      */
     public void writeToFile(BufferedWriter br) {
-        boolean isNumber = false;
         try {
-            Double.parseDouble(value);
-            isNumber = true;
-        } catch (NumberFormatException ignored) {}
-        try {
-            Long.parseLong(value);
-            isNumber = true;
-        } catch (NumberFormatException ignored) {}
-        try {
-            if (!isNumber) br.append('"');
-            br.append(value);
-            if (!isNumber) br.append('"');            
+            switch (type) {
+                case NULL -> br.append("null");
+                case STRING -> writeString(br, value);
+                default -> br.append(value);
+            }
         } catch (IOException ignored) {
         }
     }
+
+    /**
+     * write a string to a file as a double-quoted json string, escaping any characters
+     * that json does not allow within a string
+     *
+     * @param br - a buffered writer associated with the output file
+     * @param s - the string to write
+     */
+    static void writeString(BufferedWriter br, String s) throws IOException {
+        br.append('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c >= 0x20) && (c != '"') && (c != '\\')) continue;
+            br.write(s, start, i - start);
+            start = i + 1;
+            switch (c) {
+                case '"': br.append("\\\""); break;
+                case '\\': br.append("\\\\"); break;
+                case '\n': br.append("\\n"); break;
+                case '\r': br.append("\\r"); break;
+                case '\t': br.append("\\t"); break;
+                default: br.append(String.format("\\u%04x", (int)c));
+            }
+        }
+        br.write(s, start, s.length() - start);
+        br.append('"');
+    }
 }
@@ -0,0 +1,214 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A scope in which loading tasks run concurrently, each on its own virtual thread.
+ * <p>
+ * Scopes follow the rules of structured concurrency: tasks are forked into a scope, the
+ * owner of the scope joins them, and no task outlives its scope - closing a scope waits for
+ * every task in it to finish.  Cancelling a scope interrupts the tasks still running.  A task
+ * may open scopes of its own, so cancelling an outer scope cancels every task beneath it.  As
+ * elsewhere in the application, a task that fails is logged and does not stop the others.
+ * <p>
+ * Loading that is started from the user interface should be run with run(), which shows
+ * a progress dialog while the loading runs and cancels the loading if the user closes the
+ * dialog.  When run() is called from a task that is already loading, the work is simply
+ * done on the calling thread, so that only the outermost operation shows a dialog.
+ * <p>
+ * Data that tasks load lazily, and may wait for canvas while loading, is guarded with a
+ * ReentrantLock rather than synchronized, so that a virtual thread waiting for canvas does
+ * not hold on to its carrier thread.
+ */
+public class LoadingScope implements AutoCloseable {
+    // the scope of the task running on the current thread (if any)
+    static private final ThreadLocal<LoadingScope> current = new ThreadLocal<>();
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ArrayList<Future<?>> tasks = new ArrayList<>();
+    private boolean cancelled = false;
+
+    /**
+     * fork a task into the scope.  The task begins immediately on its own virtual thread.
+     *
+     * @param task - the task to run
+     * @return a future for the result of the task.  If the scope has been cancelled, the
+     *    future returned is already cancelled.
+     */
+    public synchronized <T> Future<T> fork(Callable<T> task) {
+        if (cancelled) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.cancel(false);
+            return future;
+        }
+        Future<T> future = executor.submit(() -> {
+            current.set(this);
+            try {
+                return task.call();
+            } catch (Exception | Error ex) {
+                if (!Thread.currentThread().isInterrupted()) {
+                    Logger.getLogger(LoadingScope.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                throw ex;
+            } finally {
+                current.remove();
+            }
+        });
+        tasks.add(future);
+        return future;
+    }
+
+    /**
+     * fork a task that returns no result into the scope
+     */
+    public Future<?> fork(Runnable task) {
+        return fork(Executors.callable(task));
+    }
+
+    /**
+     * wait for every task forked into the scope to finish
+     */
+    public void join() throws InterruptedException {
+        int joined = 0;
+        while (true) {
+            Future<?> next;
+            synchronized (this) {
+                if (joined == tasks.size()) return;
+                next = tasks.get(joined);
+            }
+            try {
+                next.get();
+            } catch (ExecutionException ignored) {
+                // the failure has already been logged
+            } catch (CancellationException ignored) {
+                // the scope has been cancelled
+            }
+            joined++;
+        }
+    }
+
+    /**
+     * cancel every task in the scope that has not yet finished.  Running tasks are
+     * interrupted, and tasks forked later are not started.
+     */
+    public void cancel() {
+        synchronized (this) {
+            cancelled = true;
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * returns true if the scope has been cancelled
+     */
+    public synchronized boolean isCancelled() {return cancelled;}
+
+    /**
+     * close the scope.  No more tasks may be forked, and this method waits for every task
+     * to finish.  If the calling thread is interrupted while waiting, the tasks still
+     * running are cancelled.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            cancelled = true;
+        }
+        executor.close();
+    }
+
+    /**
+     * returns true if the calling thread is running a task in a loading scope
+     */
+    static public boolean inScope() {
+        return current.get() != null;
+    }
+
+    /**
+     * returns the scope of the task running on the calling thread, or null if the calling
+     * thread is not running a task in a loading scope
+     */
+    static public LoadingScope currentScope() {
+        return current.get();
+    }
+
+    /**
+     * run a loading operation.  When called from the user interface, the operation runs on
+     * a virtual thread while a progress dialog displays its status.  If the user closes the
+     * dialog before the operation completes, the operation (and everything it has forked)
+     * is cancelled.  The user interface does not wait for the cancelled tasks to stop - the
+     * scope is closed in the background once they have.  When called from a task that is
+     * already loading, the operation runs on the calling thread.
+     *
+     * @param status - the status of the operation, displayed by the dialog.  Its percent
+     *               done is set to 1.0 when the operation completes, which closes the dialog.
+     * @param operation - the operation to run
+     */
+    static public void run(LoadingStatus status, Runnable operation) {
+        if (inScope()) {
+            operation.run();
+            return;
+        }
+        LoadingScope scope = new LoadingScope();
+        ProgressDlg progress = new ProgressDlg(status);
+        scope.fork(() -> {
+            try {
+                operation.run();
+            } finally {
+                status.setStatus(null, null, 1.0);
+            }
+        });
+        progress.showAndWait();
+
+        // if the dialog box is closed before loading completes, cancel the loading.  The
+        // tasks are interrupted, and the scope is closed without holding up the user interface
+        // while their requests are abandoned.
+        if (status.getPercentDone() < 1.0) {
+            scope.cancel();
+            Thread.ofVirtual().name("loading-scope-close").start(scope::close);
+            return;
+        }
+        scope.close();
+    }
+
+    /**
+     * perform an action on each element of a collection concurrently, and wait for every
+     * action to complete.  If the calling thread is interrupted while waiting, the actions
+     * still running are cancelled.
+     *
+     * @param elements - the elements to act on
+     * @param action - the action to perform on each element
+     * @return false if the actions were cancelled before they all completed, otherwise true
+     */
+    static public <T> boolean forEach(Collection<T> elements, Consumer<T> action) {
+        try (LoadingScope scope = new LoadingScope()) {
+            for (T element : elements) {
+                scope.fork(() -> action.accept(element));
+            }
+            try {
+                scope.join();
+                return true;
+            } catch (InterruptedException ex) {
+                scope.cancel();
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,620 @@
+package edu.asu.dlsandy.canvas_ore;
+/*
+ * Author: Douglas L. Sandy
+ * Copyright (C) 2020, Arizona State University
+ * All Rights Reserved
+ */
+
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A stand-in for the Canvas LMS that runs on the local machine, so that complete workflows
+ * (including OutcomeReport runs) can be exercised and timed without a network connection.
+ * <p>
+ * The server generates a synthetic set of courses - students, teams, assignment groups,
+ * rubric assignments, a quiz drawn from question banks, submissions and outcomes - from a
+ * random seed, and serves them through the same api resources the application uses.
+ * Collections are paginated with real Link headers, responses carry ETags and are gzipped
+ * when the client asks, and each response is delayed by a configurable latency.  Requests
+ * are metered with a leaky bucket in the same way Canvas does it, so that requests are
+ * throttled (403 with X-Rate-Limit-Remaining: 0) when too many are made at once.
+ * <p>
+ * To use it, start the server:
+ * <pre>
+ *     java edu.asu.dlsandy.canvas_ore.MockCanvasServer port=8089 latency=50
+ * </pre>
+ * and then start the application with -Dcanvas_ore.base_url=http://localhost:8089/ .
+ * The login page of the server completes immediately.  The settings (with their defaults)
+ * are:
+ * <pre>
+ *     port=8089          the port to listen on
+ *     latency=50         the minimum delay before each response (ms)
+ *     jitter=25          the maximum random delay added to the latency (ms)
+ *     page_size=10       the page size used when the request does not specify per_page
+ *     throttle=true      true to meter requests with a leaky bucket
+ *     bucket=700         the size of the rate limit bucket
+ *     leak_rate=10       the rate at which the bucket drains (units per second)
+ *     cost=1             the cost of each request (in addition to the in-flight penalty)
+ *     courses=2          the number of courses
+ *     students=60        the number of students in each course
+ *     assignments=3      the number of rubric assignments in each assignment group
+ *     seed=1             the random seed used to generate the data
+ * </pre>
+ */
+public class MockCanvasServer {
+    static private final String API_PREFIX = "/api/v1/";
+
+    // the question banks of a course are served from a page of the web site rather than the api
+    static private final String BANKS_KEY = "question_banks/";
+
+    // canvas charges each request this much while it is in flight
+    static private final double IN_FLIGHT_PENALTY = 50.0;
+
+    private final int port;
+    private final long latency;
+    private final long jitter;
+    private final int pageSize;
+    private final boolean throttle;
+    private final double bucketSize;
+    private final double leakRate;
+    private final double cost;
+
+    // the generated data.  Collections are paginated, resources are returned whole.
+    private final HashMap<String, List<Object>> collections = new HashMap<>();
+    private final HashMap<String, String> collectionKeys = new HashMap<>();
+    private final HashMap<String, Object> resources = new HashMap<>();
+
+    // the state of the rate limit bucket
+    private double bucketLevel = 0.0;
+    private long lastLeak = System.nanoTime();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * constructor - generate the synthetic data for the server
+     *
+     * @param settings - the server settings (see the class description).  Settings that are
+     *                 not present take their default values.
+     */
+    public MockCanvasServer(Properties settings) {
+        port = Integer.parseInt(settings.getProperty("port", "8089"));
+        latency = Long.parseLong(settings.getProperty("latency", "50"));
+        jitter = Long.parseLong(settings.getProperty("jitter", "25"));
+        pageSize = Integer.parseInt(settings.getProperty("page_size", "10"));
+        throttle = Boolean.parseBoolean(settings.getProperty("throttle", "true"));
+        bucketSize = Double.parseDouble(settings.getProperty("bucket", "700"));
+        leakRate = Double.parseDouble(settings.getProperty("leak_rate", "10"));
+        cost = Double.parseDouble(settings.getProperty("cost", "1"));
+        generate(Integer.parseInt(settings.getProperty("courses", "2")),
+                Integer.parseInt(settings.getProperty("students", "60")),
+                Integer.parseInt(settings.getProperty("assignments", "3")),
+                new Random(Long.parseLong(settings.getProperty("seed", "1"))));
+    }
+
+    /*
+     * helper function to build a json object from alternating keys and values.  Values may
+     * be strings, numbers, booleans, null, lists or other maps.
+     */
+    static private Map<String, Object> object(Object... keysAndValues) {
+        LinkedHashMap<String, Object> obj = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            obj.put((String)keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return obj;
+    }
+
+    /*
+     * helper function to add an element to a collection, creating the collection if needed
+     */
+    private void addTo(String path, Object element) {
+        collections.computeIfAbsent(path, k -> new ArrayList<>()).add(element);
+    }
+
+    /*
+     * helper function to generate the data served by the server
+     */
+    private void generate(int courseCount, int studentCount, int assignmentCount, Random random) {
+        resources.put("users/self", object("id", 1, "name", "Mock Instructor"));
+        for (int c = 0; c < courseCount; c++) {
+            int cid = 101 + c;
+            String course = "courses/" + cid;
+            addTo("courses", object("id", cid, "name", "Mock Course " + (c + 1),
+                    "account_id", 1, "course_code", "MOCK " + (100 + c), "start_at", "2020-08-20T07:00:00Z",
+                    "enrollments", List.of(object("type", "teacher", "role", "TeacherEnrollment"))));
+
+            // students
+            int[] students = new int[studentCount];
+            for (int s = 0; s < studentCount; s++) {
+                students[s] = cid * 1000 + s;
+                String name = "Student " + (s + 1);
+                addTo(course + "/enrollments", object("id", students[s] + 500000, "user_id", students[s],
+                        "type", "StudentEnrollment", "enrollment_state", "active",
+                        "user", object("id", students[s], "name", name, "sortable_name", (s + 1) + ", Student")));
+                resources.put("users/" + students[s] + "/profile", object("id", students[s], "name", name));
+            }
+
+            // teams of four students
+            int categoryId = cid * 10 + 1;
+            HashMap<Integer, Integer> teamOf = new HashMap<>();
+            for (int s = 0; s < studentCount; s++) {
+                int gid = cid * 100 + s / 4;
+                if (s % 4 == 0) {
+                    Map<String, Object> group = object("id", gid, "name", "Team " + (s / 4 + 1),
+                            "group_category_id", categoryId, "members_count", Math.min(4, studentCount - s));
+                    addTo(course + "/groups", group);
+                    addTo("group_categories/" + categoryId + "/groups", group);
+                }
+                addTo("groups/" + gid + "/users", object("id", students[s], "name", "Student " + (s + 1)));
+                teamOf.put(students[s], gid);
+            }
+
+            // the rubric shared by the rubric assignments
+            ArrayList<Object> rubric = new ArrayList<>();
+            for (int k = 1; k <= 3; k++) {
+                ArrayList<Object> ratings = new ArrayList<>();
+                for (int r = 4; r >= 0; r--) {
+                    ratings.add(object("id", "r" + k + "_" + r, "points", (double)r,
+                            "description", "Level " + r, "long_description", ""));
+                }
+                rubric.add(object("id", "_" + cid + "_" + k, "points", 4.0,
+                        "description", "Criterion " + k, "long_description", "", "ratings", ratings));
+            }
+
+            // assignment groups, the last of which also holds a team assignment and a quiz
+            int aid = cid * 100;
+            for (int g = 1; g <= 3; g++) {
+                ArrayList<Object> assignments = new ArrayList<>();
+                int count = assignmentCount + ((g == 3) ? 2 : 0);
+                for (int a = 0; a < count; a++) {
+                    aid++;
+                    boolean isTeam = (g == 3) && (a == count - 2);
+                    boolean isQuiz = (g == 3) && (a == count - 1);
+                    Map<String, Object> assignment = object("id", aid, "name", "Assignment " + aid,
+                            "course_id", cid, "assignment_group_id", cid * 10 + g,
+                            "due_at", "2020-10-01T06:59:59Z", "points_possible", isQuiz ? 4.0 : 12.0,
+                            "grade_group_students_individually", false,
+                            "group_category_id", isTeam ? categoryId : null,
+                            "submission_types", List.of(isQuiz ? "online_quiz" : "online_upload"));
+                    if (isQuiz) {
+                        int qid = cid * 10 + 1;
+                        assignment.put("name", "Quiz " + qid);
+                        assignment.put("quiz_id", qid);
+                        generateQuiz(cid, aid, qid, students, random);
+                    } else {
+                        assignment.put("rubric", rubric);
+                        generateSubmissions(cid, aid, students, isTeam ? teamOf : null, random);
+                    }
+                    assignments.add(assignment);
+                    addTo(course + "/assignments", assignment);
+                }
+                addTo(course + "/assignment_groups", object("id", cid * 10 + g, "name", "Group " + g,
+                        "position", g, "group_weight", 0.0,
+                        "rules", object("drop_lowest", 0, "drop_highest", 0), "assignments", assignments));
+            }
+
+            // outcomes
+            for (int k = 1; k <= 3; k++) {
+                int oid = cid * 10 + k;
+                addTo(course + "/outcome_group_links", object("url", "/api/v1/outcome_groups/1/outcomes/" + oid,
+                        "outcome", object("id", oid, "title", "Outcome " + k, "url", "/api/v1/outcomes/" + oid)));
+                resources.put("outcomes/" + oid, object("id", oid, "title", "Outcome " + k,
+                        "description", "<p>Students will demonstrate outcome " + k + "</p>"));
+            }
+        }
+    }
+
+    /*
+     * helper function to generate the rubric-graded submissions for an assignment.  If teams
+     * is not null, every member of a team receives the same assessment.
+     */
+    private void generateSubmissions(int cid, int aid, int[] students, Map<Integer, Integer> teams, Random random) {
+        HashMap<Integer, int[]> teamRatings = new HashMap<>();
+        for (int uid : students) {
+            int[] ratings = new int[3];
+            for (int k = 0; k < 3; k++) ratings[k] = 1 + random.nextInt(4);
+            if (teams != null) {
+                ratings = teamRatings.merge(teams.get(uid), ratings, (first, ignored) -> first);
+            }
+            LinkedHashMap<String, Object> assessment = new LinkedHashMap<>();
+            double score = 0.0;
+            for (int k = 0; k < 3; k++) {
+                assessment.put("_" + cid + "_" + (k + 1), object("rating_id", "r" + (k + 1) + "_" + ratings[k],
+                        "comments", "", "points", (double)ratings[k]));
+                score += ratings[k];
+            }
+            addTo("courses/" + cid + "/assignments/" + aid + "/submissions", object("id", aid * 10000 + uid % 1000,
+                    "user_id", uid, "assignment_id", aid, "attempt", 1, "score", score, "entered_score", score,
+                    "grade_matches_current_submission", true, "submission_type", "online_upload",
+                    "excused", false, "late", random.nextInt(10) == 0, "workflow_state", "graded",
+                    "rubric_assessment", assessment));
+        }
+    }
+
+    /*
+     * helper function to generate a quiz of four questions: two drawn from a question bank
+     * and two picked from a group of three questions that belong to the quiz.
+     */
+    private void generateQuiz(int cid, int aid, int qid, int[] students, Random random) {
+        String quiz = "courses/" + cid + "/quizzes/" + qid;
+        int bankId = cid * 10 + 1;
+        int bankGroup = qid * 10 + 1;
+        int quizGroup = qid * 10 + 2;
+        resources.put(quiz, object("id", qid, "title", "Quiz " + qid, "assignment_id", aid,
+                "question_count", 4, "points_possible", 4.0, "quiz_type", "assignment"));
+        addTo(BANKS_KEY + cid, object("assessment_question_bank", object("id", bankId,
+                "title", "Bank " + bankId, "assessment_question_count", 20)));
+        resources.put(quiz + "/groups/" + bankGroup, object("id", bankGroup, "quiz_id", qid, "name", "Bank Questions",
+                "pick_count", 2, "question_points", 1.0, "position", 1, "assessment_question_bank_id", bankId));
+        resources.put(quiz + "/groups/" + quizGroup, object("id", quizGroup, "quiz_id", qid, "name", "Quiz Questions",
+                "pick_count", 2, "question_points", 1.0, "position", 2, "assessment_question_bank_id", null));
+        int[] groupQuestions = {qid * 100 + 1, qid * 100 + 2, qid * 100 + 3};
+        for (int id : groupQuestions) {
+            Map<String, Object> question = object("id", id, "quiz_id", qid, "quiz_group_id", quizGroup,
+                    "position", 2, "question_name", "Question " + id, "question_type", "multiple_choice_question",
+                    "points_possible", 1.0);
+            addTo(quiz + "/questions", question);
+            resources.put(quiz + "/questions/" + id, question);
+        }
+
+        for (int uid : students) {
+            int sid = qid * 1000 + uid % 1000;
+            ArrayList<Object> asked = new ArrayList<>();
+            ArrayList<Object> history = new ArrayList<>();
+            int[] picked = {bankId * 1000 + random.nextInt(10), bankId * 1000 + 10 + random.nextInt(10),
+                    groupQuestions[random.nextInt(3)], 0};
+            picked[3] = groupQuestions[(Arrays.binarySearch(groupQuestions, picked[2]) + 1) % 3];
+            double score = 0.0;
+            for (int i = 0; i < picked.length; i++) {
+                boolean correct = random.nextInt(3) != 0;
+                if (correct) score += 1.0;
+                asked.add(object("id", picked[i], "quiz_id", qid, "quiz_group_id", (i < 2) ? bankGroup : quizGroup,
+                        "position", i + 1, "question_name", "Question " + picked[i],
+                        "question_type", "multiple_choice_question", "points_possible", 1.0, "correct", correct));
+                history.add(object("correct", correct, "points", correct ? 1.0 : 0.0,
+                        "question_id", picked[i], "answer_id", picked[i] * 10 + (correct ? 1 : 2)));
+            }
+            collectionKeys.put("quiz_submissions/" + sid + "/questions", "quiz_submission_questions");
+            collections.put("quiz_submissions/" + sid + "/questions", asked);
+            addTo(quiz + "/submissions", object("id", sid, "quiz_id", qid, "user_id", uid, "submission_id", aid * 10000 + uid % 1000,
+                    "attempt", 1, "score", score, "kept_score", score, "workflow_state", "complete"));
+            addTo("courses/" + cid + "/assignments/" + aid + "/submissions", object("id", aid * 10000 + uid % 1000,
+                    "user_id", uid, "assignment_id", aid, "attempt", 1, "score", score, "entered_score", score,
+                    "grade_matches_current_submission", true, "submission_type", "online_quiz",
+                    "excused", false, "late", false, "workflow_state", "graded"));
+            resources.put("courses/" + cid + "/assignments/" + aid + "/submissions/" + uid, object("id", aid * 10000 + uid % 1000,
+                    "user_id", uid, "submission_history", List.of(object("attempt", 1, "submission_data", history))));
+        }
+        collectionKeys.put(quiz + "/submissions", "quiz_submissions");
+    }
+
+    /*
+     * helper function to write a value as json.  As canvas does, '<' and '>' are escaped so
+     * that the json can be embedded in a web page.
+     */
+    @SuppressWarnings("unchecked")
+    static private void writeJson(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof Map) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>)value).entrySet()) {
+                if (!first) sb.append(',');
+                first = false;
+                writeJson(sb, entry.getKey());
+                sb.append(':');
+                writeJson(sb, entry.getValue());
+            }
+            sb.append('}');
+        } else if (value instanceof List) {
+            sb.append('[');
+            boolean first = true;
+            for (Object element : (List<Object>)value) {
+                if (!first) sb.append(',');
+                first = false;
+                writeJson(sb, element);
+            }
+            sb.append(']');
+        } else if (value instanceof String) {
+            sb.append('"');
+            for (char c : ((String)value).toCharArray()) {
+                switch (c) {
+                    case '"' : sb.append("\\\""); break;
+                    case '\\' : sb.append("\\\\"); break;
+                    case '\n' : sb.append("\\n"); break;
+                    case '<' : sb.append("\\u003c"); break;
+                    case '>' : sb.append("\\u003e"); break;
+                    default : sb.append(c);
+                }
+            }
+            sb.append('"');
+        } else {
+            sb.append(value);
+        }
+    }
+
+    /*
+     * helper function to split a query string into its parameters
+     */
+    static private Map<String, String> parseQuery(String query) {
+        HashMap<String, String> parameters = new HashMap<>();
+        if (query == null) return parameters;
+        for (String parameter : query.split("&")) {
+            String[] parts = parameter.split("=", 2);
+            parameters.put(parts[0], (parts.length > 1) ? parts[1] : "");
+        }
+        return parameters;
+    }
+
+    /*
+     * helper function to answer the course-wide submissions api.  The submissions of the
+     * assignments listed by the assignment_ids[] parameters (or of every assignment in the
+     * course, if none are listed) are returned one assignment after another.
+     */
+    private List<Object> studentSubmissions(String cid, String query) {
+        ArrayList<String> assignmentIds = new ArrayList<>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                String[] parts = URLDecoder.decode(parameter, StandardCharsets.UTF_8).split("=", 2);
+                if (parts[0].equals("assignment_ids[]") && (parts.length > 1)) assignmentIds.add(parts[1]);
+            }
+        }
+        String prefix = "courses/" + cid + "/assignments/";
+        if (assignmentIds.isEmpty()) {
+            for (String key : collections.keySet()) {
+                if (key.startsWith(prefix) && key.endsWith("/submissions")) {
+                    assignmentIds.add(key.substring(prefix.length(), key.length() - "/submissions".length()));
+                }
+            }
+            Collections.sort(assignmentIds);
+        }
+        ArrayList<Object> result = new ArrayList<>();
+        for (String aid : assignmentIds) {
+            List<Object> submissions = collections.get(prefix + aid + "/submissions");
+            if (submissions != null) result.addAll(submissions);
+        }
+        return result;
+    }
+
+    /*
+     * helper function to build the url of another page of the same collection
+     */
+    private String pageUrl(URI uri, int page, int perPage) {
+        StringBuilder sb = new StringBuilder("http://localhost:").append(port).append(uri.getRawPath()).append('?');
+        String query = uri.getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("page=") || parameter.startsWith("per_page=")) continue;
+                sb.append(parameter).append('&');
+            }
+        }
+        return sb.append("page=").append(page).append("&per_page=").append(perPage).toString();
+    }
+
+    /*
+     * helper function to charge a request against the rate limit bucket.  Returns the units
+     * remaining in the bucket, or a negative number if the request should be refused.
+     */
+    private synchronized double charge(double units) {
+        long now = System.nanoTime();
+        bucketLevel = Math.max(0.0, bucketLevel - leakRate * (now - lastLeak) / 1e9);
+        lastLeak = now;
+        if ((units > 0) && (bucketLevel + units > bucketSize)) return -1.0;
+        bucketLevel = Math.max(0.0, bucketLevel + units);
+        return bucketSize - bucketLevel;
+    }
+
+    /*
+     * helper function to send a response, compressing it if the client allows it
+     */
+    static private void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if ((accept != null) && accept.contains("gzip") && (bytes.length > 0)) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, (bytes.length == 0) ? -1 : bytes.length);
+        // a response without a body (such as 304 Not Modified) has no body stream to write
+        if (bytes.length == 0) return;
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /*
+     * helper function to compute the entity tag of a response body
+     */
+    static private String etag(String body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder("W/\"");
+            for (int i = 0; i < 8; i++) sb.append(String.format("%02x", digest[i]));
+            return sb.append('"').toString();
+        } catch (NoSuchAlgorithmException ex) {
+            return null;
+        }
+    }
+
+    /*
+     * helper function to answer a request for an api resource or collection
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        URI uri = exchange.getRequestURI();
+        String path = uri.getPath();
+
+        // the login page completes immediately
+        if (path.equals("/login")) {
+            exchange.getResponseHeaders().set("Location", "http://localhost:" + port + "/?login_success=1");
+            exchange.getResponseHeaders().add("Set-Cookie", "canvas_session=mock; Path=/");
+            send(exchange, 302, "text/html", "");
+            return;
+        }
+        if (path.equals("/")) {
+            send(exchange, 200, "text/html", "<html><body>Mock Canvas</body></html>");
+            return;
+        }
+
+        // simulate the time taken by canvas to answer
+        try {
+            Thread.sleep(latency + ((jitter > 0) ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        double remaining = throttle ? charge(IN_FLIGHT_PENALTY) : bucketSize;
+        Headers headers = exchange.getResponseHeaders();
+        if (remaining < 0) {
+            headers.set("X-Rate-Limit-Remaining", "0.0");
+            send(exchange, 403, "text/plain", "403 Forbidden (Rate Limit Exceeded)");
+            return;
+        }
+
+        String key;
+        if (path.startsWith(API_PREFIX)) {
+            key = path.substring(API_PREFIX.length());
+        } else if (path.matches("/courses/\\d+/question_banks")) {
+            key = BANKS_KEY + path.split("/")[2];
+        } else {
+            key = path.substring(1);
+        }
+        while (key.endsWith("/")) key = key.substring(0, key.length() - 1);
+
+        StringBuilder body = new StringBuilder();
+        int status = 200;
+        List<Object> all = collections.get(key);
+        if ((all == null) && key.matches("courses/\\d+/students/submissions")) {
+            all = studentSubmissions(key.split("/")[1], uri.getRawQuery());
+        }
+        if (all != null) {
+            Map<String, String> query = parseQuery(uri.getRawQuery());
+            int perPage = pageSize;
+            int page = 1;
+            try {
+                if (query.containsKey("per_page")) perPage = Math.max(1, Math.min(100, Integer.parseInt(query.get("per_page"))));
+                if (query.containsKey("page")) page = Math.max(1, Integer.parseInt(query.get("page")));
+            } catch (NumberFormatException ignored) {
+            }
+            int lastPage = Math.max(1, (all.size() + perPage - 1) / perPage);
+            List<Object> elements = all.subList(Math.min(all.size(), (page - 1) * perPage), Math.min(all.size(), page * perPage));
+
+            StringBuilder link = new StringBuilder();
+            link.append('<').append(pageUrl(uri, page, perPage)).append(">; rel=\"current\"");
+            if (page < lastPage) link.append(",<").append(pageUrl(uri, page + 1, perPage)).append(">; rel=\"next\"");
+            if (page > 1) link.append(",<").append(pageUrl(uri, page - 1, perPage)).append(">; rel=\"prev\"");
+            link.append(",<").append(pageUrl(uri, 1, perPage)).append(">; rel=\"first\"");
+            // as with canvas, the last page is not reported for every collection
+            if (!key.endsWith("/enrollments")) link.append(",<").append(pageUrl(uri, lastPage, perPage)).append(">; rel=\"last\"");
+            headers.set("Link", link.toString());
+
+            if (key.startsWith(BANKS_KEY)) body.append("while(1);");
+            if (collectionKeys.containsKey(key)) {
+                writeJson(body, object(collectionKeys.get(key), elements));
+            } else {
+                writeJson(body, elements);
+            }
+        } else if (resources.containsKey(key)) {
+            writeJson(body, resources.get(key));
+        } else {
+            status = 404;
+            writeJson(body, object("errors", List.of(object("message", "The specified resource does not exist."))));
+        }
+
+        remaining = throttle ? charge(cost - IN_FLIGHT_PENALTY) : bucketSize;
+        headers.set("X-Request-Cost", Double.toString(cost));
+        headers.set("X-Rate-Limit-Remaining", Double.toString(remaining));
+        if (status == 200) {
+            String tag = etag(body.toString());
+            if (tag != null) {
+                headers.set("ETag", tag);
+                if (tag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    send(exchange, 304, "application/json; charset=utf-8", "");
+                    return;
+                }
+            }
+        }
+        send(exchange, status, "application/json; charset=utf-8", body.toString());
+    }
+
+    /**
+     * start serving requests
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", exchange -> {
+            try {
+                handle(exchange);
+            } catch (IOException | RuntimeException ex) {
+                Logger.getLogger(MockCanvasServer.class.getName()).log(Level.SEVERE, null, ex);
+            } finally {
+                exchange.close();
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * stop serving requests
+     */
+    public void stop() {
+        if (server != null) server.stop(0);
+        if (executor != null) executor.shutdownNow();
+    }
+
+    /**
+     * returns the url to use as the canvas_ore.base_url when connecting to this server
+     */
+    public String getBaseUrl() {return "http://localhost:" + port + "/";}
+
+    /**
+     * start a mock server from the command line
+     *
+     * @param args - settings of the form name=value (see the class description)
+     */
+    public static void main(String[] args) throws IOException {
+        Properties settings = new Properties();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length == 2) settings.setProperty(parts[0], parts[1]);
+        }
+        MockCanvasServer server = new MockCanvasServer(settings);
+        server.start();
+        System.out.println("Mock Canvas server listening at " + server.getBaseUrl());
+    }
+}
@@ -88,6 +88,15 @@ public class OutcomeEditForm extends Stage {
      * Helper function to add the associations to the dialog box's picker tree.  
      */
     private void addCanvasAssociationsToTree(CheckBoxTreeItem<OutcomeAssociation> root) {
+      // start loading the question groups of every quiz at once, rather than one quiz at a
+      // time as the tree is built
+      for (AssignmentGroup group:assignmentGroups) {
+          if (group.getAssignments()==null) continue;
+          for (Assignment assignment:group.getAssignments()) {
+              if (assignment.isQuiz()) assignment.getQuiz().prefetch();
+          }
+      }
+
       // loop for each assignment group
       for (AssignmentGroup group:assignmentGroups) {
     	  // create the new association and tree element
@@ -48,6 +48,8 @@ public class OutcomeReport {
      * helper function to create the symbol table to be used for search and replace
      */
     private void createSymbolTable() {
+        CanvasEvents.SymbolTable event = new CanvasEvents.SymbolTable();
+        event.begin();
         symbolTable = new TreeMap<>();
         DecimalFormat dfPercent = new DecimalFormat("##0.0%");
         DecimalFormat dfDecimal = new DecimalFormat("##,##0.0");
@@ -315,6 +317,15 @@ public class OutcomeReport {
             }
             symbolTable.put("$+O"+ outcomeNumber +".TOTALSTUDENTS$-",Integer.toString(student_list.size()));
         }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.courseId = course_id;
+            event.outcomes = outcomes.size();
+            event.students = student_list.size();
+            event.symbols = symbolTable.size();
+            event.commit();
+        }
     }
     
     /*
@@ -336,6 +347,8 @@ public class OutcomeReport {
             	template.close();
             	return;
             }
+            CanvasEvents.ReportRender event = new CanvasEvents.ReportRender(course_id, templatename, "write");
+            event.begin();
             BufferedWriter outfile = new BufferedWriter(new FileWriter(file,StandardCharsets.UTF_8, false));
 
             // loop to read the file line-by-line
@@ -517,6 +530,7 @@ public class OutcomeReport {
             }
             outfile.close();
             template.close();
+            event.commit();
         } catch (IOException ex) {
             Logger.getLogger(OutcomeReport.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -552,6 +566,8 @@ public class OutcomeReport {
      * helper function to create a report using a template with the specified filename
      */
     private void createExcelKpiReport() {
+        CanvasEvents.ReportRender buildEvent = new CanvasEvents.ReportRender(course_id, "excel", "build");
+        buildEvent.begin();
         try {
             // Reading file from local directory
             InputStream inputstream = CanvasOre.class.getResourceAsStream("template.xlsx");
@@ -724,6 +740,7 @@ public class OutcomeReport {
             }
             // remove the template sheet
             workbook.removeSheetAt(1);
+            buildEvent.commit();
 
             // get the output file name
             FileChooser fileChooser = new FileChooser();
@@ -735,10 +752,13 @@ public class OutcomeReport {
             if (outfile==null) {
                 return;
             }
+            CanvasEvents.ReportRender writeEvent = new CanvasEvents.ReportRender(course_id, "excel", "write");
+            writeEvent.begin();
             FileOutputStream outfilestream = new FileOutputStream(outfile);
             workbook.write(outfilestream);
             workbook.close();
             outfilestream.close();
+            writeEvent.commit();
         } catch (Exception ex) {
             Logger.getLogger(OutcomeReport.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -788,5 +808,15 @@ public class OutcomeReport {
                 createExcelKpiReport();
                 break;
         }
+
+        // if requested, save the statistics for the requests made to canvas during the run
+        String metricsFile = System.getProperty("canvas_ore.metrics_file");
+        if (metricsFile != null) {
+            try {
+                CanvasTransport.getMetrics().writeToFile(new File(metricsFile));
+            } catch (IOException ex) {
+                Logger.getLogger(OutcomeReport.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
     }
 }
@@ -8,12 +8,28 @@ package edu.asu.dlsandy.canvas_ore;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.net.CookieHandler;
 import java.net.CookieManager;
-import java.net.HttpCookie;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  *
@@ -24,7 +40,11 @@ import java.net.URL;
  * if two-factor authentication is required, the user will also be prompted for that.
  * <p>
  * Once authentication has completed, the authentication handshakes (handled in cookies) are
- * managed by an HttpCookieManager.
+ * managed by an HttpCookieManager.  Requests are sent through the shared CanvasTransport.
+ * <p>
+ * Json responses are memoized for the duration of a run (a single user workflow): identical
+ * requests made at the same time share one download, and later identical requests are
+ * answered from memory.  Callers must therefore treat the values returned as read-only.
  * 
  * @author Doug Sandy
  * Copyright (C) 2020, Arizona State University
@@ -33,8 +53,33 @@ import java.net.URL;
 public class RequesterSso {
 	static final CookieManager cookieManager = new CookieManager();
 	static boolean authenticated = false;
-	static int lastResponse = 0;
+	static volatile int lastResponse = 0;
+
+	// the maximum number of pages of a single response that will be read at the same time
+	static final int MAX_CONCURRENT_PAGES = 6;
+
+	// the canvas site to communicate with.  This may be overridden with the canvas_ore.base_url
+	// system property (for instance, to point the application at a MockCanvasServer).
+	static final String BASE_URL = baseUrl(System.getProperty("canvas_ore.base_url", "https://canvas.asu.edu/"));
+	static final String API_URL = BASE_URL + "api/v1/";
+	static private final Pattern PAGE_PARAMETER = Pattern.compile("([?&]page=)([^&]*)");
+
+	// json responses requested during the current run, keyed by url
+	static private final ConcurrentHashMap<String, CompletableFuture<JsonAbstractValue>> memo = new ConcurrentHashMap<>();
+
+	// the elements of responses read with an element reader during the current run, keyed by
+	// url and the type of element read
+	static private final ConcurrentHashMap<ElementKey, CompletableFuture<List<?>>> elementMemo = new ConcurrentHashMap<>();
 	
+	/*
+	 * helper function to make sure the base url ends with a single '/'
+	 */
+	static private String baseUrl(String url) {
+		url = url.trim();
+		while (url.endsWith("/")) url = url.substring(0, url.length()-1);
+		return url + "/";
+	}
+
 	/**
 	 * based on the previous canvas response, extract the next page to read from canvas.
 	 * 
@@ -42,7 +87,7 @@ public class RequesterSso {
 	 * @return a string representing the next url to read to continue a multipart canvas
 	 *   response.  If the last page has been read, "" is returned.
 	 */
-    static private String getNextLink(String link_response) {
+    static String getNextLink(String link_response) {
         if (link_response!=null) {
             String[] links = link_response.split(",");
             for (String l:links) {
@@ -57,82 +102,272 @@ public class RequesterSso {
     }
     
     /**
-     * perform a http Get request from canvas using the uri specified.  Automatically
-     * perform authentication and Canvas response pagination requests if required.
-     * 
-     * @param uri - the uri to read from 
-     * @return A string that represents the body of the response packet
+     * based on the previous canvas response, extract the link to the last page of a
+     * multipart canvas response.
+     *
+     * @param link_response - the response from the last request from canvas
+     * @return a string representing the url of the last page, or "" if canvas did not
+     *   provide one.
      */
-    static public String httpGetRequest(String uri) throws IOException {
-        // process a single get request to canvas, using supplied credentials 
-    	
-    	// if not yet authenticated, try to authenticate
+    static String getLastLink(String link_response) {
+        if (link_response!=null) {
+            String[] links = link_response.split(",");
+            for (String l:links) {
+                if (l.contains("rel=\"last\"")) {
+                    return l.replaceAll(".*<","").replaceAll(">.+","");
+                }
+            }
+        }
+        return "";
+    }
+
+    /**
+     * returns the page number encoded in a canvas pagination url, or -1 if the url does
+     * not contain a numbered page (for instance, canvas uses opaque "bookmark:" values
+     * for some endpoints).
+     */
+    static int getPageNumber(String url) {
+        Matcher m = PAGE_PARAMETER.matcher(url);
+        if (!m.find()) return -1;
+        try {
+            return Integer.parseInt(m.group(2));
+        } catch (NumberFormatException ignored) {
+            return -1;
+        }
+    }
+
+    /**
+     * returns a copy of the pagination url with its page number replaced by the one given
+     */
+    static private String setPageNumber(String url, int page) {
+        return PAGE_PARAMETER.matcher(url).replaceFirst("$1"+page);
+    }
+
+    /**
+     * Handles the body of each page of a canvas response.  Pages are handed to the
+     * handler one at a time, in page order.
+     */
+    private interface PageHandler {
+        void handle(InputStream body) throws IOException;
+    }
+
+    /**
+     * Loads the result of a request that is shared by every caller that makes the same
+     * request during a run.  Returns null if the request failed.
+     */
+    private interface SharedLoader<V> {
+        V load() throws IOException;
+    }
+
+    /**
+     * The key of the elements of a response in the element memo.  The same resource read
+     * as a different type of element is a different entry.
+     */
+    static private final class ElementKey {
+        final String url;
+        final Class<?> type;
+
+        ElementKey(String url, Class<?> type) {
+            this.url = url;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof ElementKey key) && (url.equals(key.url)) && (type == key.type);
+        }
+
+        @Override
+        public int hashCode() {return url.hashCode()*31 + type.hashCode();}
+    }
+
+    /**
+     * Builds a single json value from the pages of a canvas response.  The elements of
+     * array pages are appended to one array.  Object pages are merged, with the arrays
+     * stored under the same key appended to one another.
+     */
+    private static final class ResponseBuilder implements PageHandler {
+        JsonAbstractValue result = null;
+
+        public void handle(InputStream body) throws IOException {
+            JsonAbstractValue page = new JsonStreamParser(body).parse();
+            if (page == null) return;
+            if (result == null) {
+                result = page;
+            } else if ((result instanceof JsonArray) && (page instanceof JsonArray)) {
+                ((JsonArray)result).addAll((JsonArray)page);
+            } else if ((result instanceof JsonObject) && (page instanceof JsonObject)) {
+                JsonObject obj = (JsonObject)result;
+                for (Map.Entry<String, JsonAbstractValue> entry:((JsonObject)page).entrySet()) {
+                    JsonAbstractValue existing = obj.get(entry.getKey());
+                    if ((existing instanceof JsonArray) && (entry.getValue() instanceof JsonArray)) {
+                        ((JsonArray)existing).addAll((JsonArray)entry.getValue());
+                    } else {
+                        obj.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * if not yet authenticated, try to authenticate.
+     *
+     * @return true if the user is authenticated, otherwise false
+     */
+    static boolean authenticate() {
     	if (!authenticated) {
     		// attempt to authenticate
         	CookieHandler.setDefault(cookieManager);
         	AuthenticationDlg authenticationDlg = new AuthenticationDlg();
         	authenticationDlg.showAndWait();
         	if (!authenticationDlg.authenticationSuccess()) {
-        		return null;
+        		return false;
         	}
     	}
     	authenticated = true;
-    	
-    	String nextUrl = uri;
-        StringBuilder response = new StringBuilder();
-        
-        // loop for each page in the response
-        while (!nextUrl.isEmpty()) {
-            URL obj;
-            obj = new URL(nextUrl);
-            
-            // create the connection object
-            HttpURLConnection con;
-            con = (HttpURLConnection) obj.openConnection();
-            
-            // add cookies to the header - this includes any required authentication information
-            if (cookieManager.getCookieStore().getCookies().size() > 0) {
-                StringBuilder cookies = new StringBuilder();
-            	int cookie_count = 0;
-            	for (HttpCookie c:cookieManager.getCookieStore().getCookies()) {
-                	if (cookie_count != 0) {
-                		cookies.append(";");
-                	}
-            		cookie_count ++;
-            		cookies.append(c.toString());
+        return true;
+    }
+
+    /**
+     * hand the body of a page to the page handler.
+     *
+     * @param response - the response that was received for the page
+     * @param handler - the handler for the page body
+     * @return true on success, or false if canvas returned an error response
+     */
+    static private boolean handlePage(HttpResponse<InputStream> response, PageHandler handler) throws IOException {
+        lastResponse = response.statusCode();
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                Logger.getLogger(RequesterSso.class.getName()).log(Level.WARNING,
+                        "canvas returned status {0} for {1}", new Object[] {response.statusCode(), response.uri()});
+                return false;
+            }
+            handler.handle(body);
+        }
+        return true;
+    }
+
+    /**
+     * read the remaining pages of a multipart response when canvas numbers its pages.
+     * Requests for up to MAX_CONCURRENT_PAGES pages are kept outstanding ahead of the page
+     * being handled, and the pages are handed to the handler in page order.  The pages
+     * requested ahead do not hold their place in the scheduler while they wait to be read.
+     *
+     * @param nextUrl - the url of the first page to read
+     * @param firstPage - the page number of the first page to read
+     * @param lastPage - the page number of the last page to read
+     * @param handler - the handler for each page body
+     * @return true on success, or false if canvas returned an error response
+     */
+    static private boolean readNumberedPages(String nextUrl, int firstPage, int lastPage, PageHandler handler) throws IOException {
+        ArrayDeque<CompletableFuture<HttpResponse<InputStream>>> pending = new ArrayDeque<>();
+        int requested = firstPage;
+        try {
+            for (int page = firstPage; page <= lastPage; page++) {
+                while ((requested <= lastPage) && (pending.size() < MAX_CONCURRENT_PAGES)) {
+                    // every page but the next to be handled is read ahead
+                    pending.add(CanvasTransport.getAsync(setPageNumber(nextUrl, requested), !pending.isEmpty()));
+                    requested++;
                 }
-                con.setRequestProperty("Cookie",cookies.toString());
+                if (!handlePage(CanvasTransport.await(pending.remove()), handler)) return false;
             }
-            // request json responses
-            con.setRequestProperty("Accept", "application/json");
-            
-            // Set request method for HTTP GET
-            con.setRequestMethod("GET");
-
-            // get the response
-            lastResponse = con.getResponseCode();
-            if (lastResponse != 200) return null;
-
-            BufferedReader in;
-            in = new BufferedReader(
-                    new InputStreamReader(con.getInputStream()));
-            String inputLine;
+        } finally {
+            // release any pages that will not be read
+            for (CompletableFuture<HttpResponse<InputStream>> future:pending) {
+                future.cancel(true);
+                future.thenAccept(CanvasTransport::discard);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * read every page of a canvas response, handing each page body to the handler in
+     * page order.
+     * <p>
+     * When canvas numbers the pages of a response and reports the last one, the remaining
+     * pages are requested concurrently.  Otherwise, the next links are followed one page
+     * at a time.
+     *
+     * @param url - the url of the first page
+     * @param handler - the handler for each page body
+     * @return true on success, or false if canvas returned an error response
+     */
+    static private boolean readPages(String url, PageHandler handler) throws IOException {
+        CanvasTransport.getMetrics().recordRequest(url, false);
+        CanvasEvents.Request event = new CanvasEvents.Request(url);
+        event.begin();
+        try {
+            event.succeeded = followPages(url, body -> {
+                event.pages++;
+                handler.handle(body);
+            });
+            return event.succeeded;
+        } finally {
+            event.commit();
+        }
+    }
+
+    /*
+     * helper function to read every page of a response (see readPages)
+     */
+    static private boolean followPages(String url, PageHandler handler) throws IOException {
+        // read the first page - its link header tells us how the rest of the
+        // response is paginated
+        HttpResponse<InputStream> response = CanvasTransport.await(CanvasTransport.getAsync(url));
+        String link = response.headers().firstValue("Link").orElse(null);
+        if (!handlePage(response, handler)) return false;
+
+        String nextUrl = getNextLink(link);
+        if (nextUrl.isEmpty()) return true;
+        int firstPage = getPageNumber(nextUrl);
+        int lastPage = getPageNumber(getLastLink(link));
+        if ((firstPage >= 0) && (lastPage >= firstPage)) {
+            return readNumberedPages(nextUrl, firstPage, lastPage, handler);
+        }
+
+        // loop for each page in the response
+        while (!nextUrl.isEmpty()) {
+            response = CanvasTransport.await(CanvasTransport.getAsync(nextUrl));
+            link = response.headers().firstValue("Link").orElse(null);
+            if (!handlePage(response, handler)) return false;
+            nextUrl = getNextLink(link);
+        }
+        return true;
+    }
 
-            // concatenate the input pages, adding comma characters between
-            // each page - strip any enclosing braces/parenthesis
+    /**
+     * perform a http Get request from canvas using the uri specified.  Automatically
+     * perform authentication and Canvas response pagination requests if required.
+     * 
+     * @param uri - the uri to read from 
+     * @return A string that represents the body of the response packet
+     */
+    static public String httpGetRequest(String uri) throws IOException {
+        // process a single get request to canvas, using supplied credentials 
+    	if (!authenticate()) return null;
+
+        StringBuilder response = new StringBuilder();
+
+        // concatenate the input pages, adding comma characters between
+        // each page - strip any enclosing braces/parenthesis
+        boolean success = readPages(uri, body -> {
+            BufferedReader in = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+            String inputLine;
             while ((inputLine = in.readLine()) != null) {
                 String trimmed;
-            	if (inputLine.startsWith("while(1);")) {
-                	trimmed = inputLine.substring(10,inputLine.length()-1);
+                if (inputLine.startsWith("while(1);")) {
+                    trimmed = inputLine.substring(10,inputLine.length()-1);
                 } else {
-                    trimmed = inputLine.substring(1,inputLine.length()-1); 
+                    trimmed = inputLine.substring(1,inputLine.length()-1);
                 }
                 if (response.length()!=0) response.append(",");
                 response.append(trimmed);
             }
-            in.close();
-            nextUrl = getNextLink(con.getHeaderField("Link"));
-        }
+        });
+        if (!success) return null;
 
         // wrap the result in the appropriate brackets
         if ((response.length()>0) && (response.charAt(0) != '{')) {
@@ -146,22 +381,186 @@ public class RequesterSso {
         return response.toString();  
     }
 
+    /**
+     * perform a http Get request from canvas for a json response, parsing each page as it
+     * arrives.  Automatically perform authentication and Canvas response pagination
+     * requests if required.
+     *
+     * @param url - the url to read from
+     * @return a JsonAbstractValue representing the results of the request, or null if the
+     *    request failed
+     */
+    static public JsonAbstractValue jsonGetRequest(String url) throws IOException {
+        if (!authenticate()) return null;
+        return shared(memo, url, url, () -> {
+            ResponseBuilder builder = new ResponseBuilder();
+            if (!readPages(url, builder)) return null;
+            return (builder.result == null) ? new JsonArray() : builder.result;
+        });
+    }
+
+    /*
+     * helper function to make a request whose result is shared with every other caller that
+     * makes the same request during this run.  If the caller making the request is
+     * interrupted, the callers waiting for it are not - one of them makes the request again.
+     *
+     * @param memo - the results of the requests made during this run
+     * @param key - the key of the request's result in the memo
+     * @param url - the url requested
+     * @param loader - makes the request
+     */
+    static private <K, V> V shared(ConcurrentHashMap<K, CompletableFuture<V>> memo, K key, String url, SharedLoader<V> loader) throws IOException {
+        while (true) {
+            // if the same request has already been made during this run, share its result
+            CompletableFuture<V> request = new CompletableFuture<>();
+            CompletableFuture<V> shared = memo.putIfAbsent(key, request);
+            if (shared == null) return load(memo, key, request, loader);
+
+            CanvasTransport.getMetrics().recordRequest(url, true);
+            CanvasEvents.Request event = new CanvasEvents.Request(url);
+            event.coalesced = true;
+            event.begin();
+            try {
+                V result = awaitShared(shared);
+                event.succeeded = (result != null);
+                return result;
+            } catch (CancellationException ex) {
+                // the caller making the request was interrupted - try again
+            } finally {
+                event.commit();
+            }
+        }
+    }
+
+    /*
+     * helper function to make a request on behalf of every caller sharing it.  If this
+     * thread is interrupted while making the request, the shared request is cancelled
+     * rather than failed, so that the callers waiting for it make it again.
+     */
+    static private <K, V> V load(ConcurrentHashMap<K, CompletableFuture<V>> memo, K key,
+            CompletableFuture<V> request, SharedLoader<V> loader) throws IOException {
+        try {
+            V result = loader.load();
+            if (result == null) {
+                // don't remember failures - the next request for this url will try again
+                memo.remove(key, request);
+                if (Thread.currentThread().isInterrupted()) {
+                    request.cancel(false);
+                    return null;
+                }
+            }
+            request.complete(result);
+            return result;
+        } catch (IOException | RuntimeException ex) {
+            memo.remove(key, request);
+            if (isInterruption(ex)) {
+                request.cancel(false);
+            } else {
+                request.completeExceptionally(ex);
+            }
+            throw ex;
+        }
+    }
+
+    /*
+     * helper function that returns true if a request failed because the thread making it
+     * was interrupted (or its request was cancelled)
+     */
+    static private boolean isInterruption(Exception ex) {
+        return (Thread.currentThread().isInterrupted()) || (ex instanceof InterruptedIOException) ||
+                (ex instanceof CancellationException) || (ex.getCause() instanceof InterruptedIOException);
+    }
+
+    /*
+     * helper function to wait for a request that was made by another caller.  Unlike
+     * CanvasTransport.await(), the request is not cancelled if this thread is interrupted,
+     * since other callers may still be waiting for it.
+     */
+    static private <V> V awaitShared(CompletableFuture<V> shared) throws IOException {
+        try {
+            return shared.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("canvas request interrupted");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) throw (IOException)ex.getCause();
+            if (ex.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException)ex.getCause()).getCause();
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /**
+     * begin a new run.  Responses memoized (and question banks and teams cached) during the
+     * previous run are forgotten so that the new run sees the current state of canvas, and
+     * the request metrics are reset.
+     */
+    static public void startRun() {
+        memo.clear();
+        elementMemo.clear();
+        CanvasQuestionBankIndex.reset();
+        CanvasTeamCache.reset();
+        CanvasTransport.getMetrics().reset();
+    }
+
+    /**
+     * forget the memoized response for the specified url (if any), so that the next request
+     * for it is sent to canvas
+     */
+    static void forget(String url) {
+        memo.remove(url);
+        elementMemo.keySet().removeIf(key -> key.url.equals(url));
+    }
+
     /**
      * send a GET request through the canvas API.
      *
-     * @param uri - the resource to request (not including <a href="https://canvas.asu.edu/api/vi/">...</a> )
+     * @param uri - the resource to request (not including the api url)
      * @return a JsonAbstractValue representing the results of the request
      */
     static public JsonAbstractValue apiGetRequest(String uri) throws IOException {
-        // request the information from canvas
-    	String strResponse = httpGetRequest("https://canvas.asu.edu/api/v1/"+uri);
-        if (strResponse == null) {
-        	return null;
-        }
-        
-        // convert the JSON-coded response into JSON objects
-        JsonResultFactory rf = new JsonResultFactory();
-        return rf.build(strResponse);
+        return jsonGetRequest(API_URL+uri);
+    }
+
+    /**
+     * send a GET request through the canvas API, handing each element of the response to
+     * the consumer as soon as it has been parsed, rather than building the complete response.
+     *
+     * @param uri - the resource to request (not including the api url)
+     * @param key - null if each page of the response is an array.  Otherwise, each page is
+     *            an object and this is the key of the array to hand to the consumer.
+     * @param consumer - the consumer to hand each element to, in response order
+     * @return true on success, or false if the request failed
+     */
+    static public boolean apiStreamRequest(String uri, String key, Consumer<JsonAbstractValue> consumer) throws IOException {
+        if (!authenticate()) return false;
+        return readPages(API_URL+uri,
+                body -> new JsonStreamParser(body).parseElements(key, consumer));
+    }
+
+    /**
+     * send a GET request through the canvas API, reading each element of the response with
+     * an element reader rather than building the complete response.  Like apiGetRequest(),
+     * the elements are memoized for the duration of the run.  They are memoized by type, so
+     * every request for the same resource and type of element must read its elements with
+     * the same kind of element reader.
+     *
+     * @param uri - the resource to request (not including the api url)
+     * @param key - null if each page of the response is an array.  Otherwise, each page is
+     *            an object and this is the key of the array holding the elements.
+     * @param type - the type of element read
+     * @param reader - reads each element of the response
+     * @return a read-only list of the elements, in response order, or null if the request
+     *    failed
+     */
+    static public <T> List<T> apiReadRequest(String uri, String key, Class<T> type, JsonReader.ElementReader<T> reader) throws IOException {
+        if (!authenticate()) return null;
+        String url = API_URL+uri;
+        List<?> elements = shared(elementMemo, new ElementKey(url, type), url, () -> {
+            ArrayList<T> read = new ArrayList<>();
+            if (!readPages(url, body -> new JsonReader(body).readElements(key, reader, read::add))) return null;
+            return Collections.unmodifiableList(read);
+        });
+        if (elements == null) return null;
+        return elements.stream().map(type::cast).toList();
     }
- 
 }
@@ -20,7 +20,7 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 
-import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.Serial;
 import java.util.ArrayList;
 import java.util.Objects;
@@ -82,19 +82,15 @@ public class StudentSelectorDlg extends Stage {
          * @param course_id - the canvas course id to query
          */
         public EnrollmentList(String course_id) {
-            try {
-                JsonArray jsonArray;
-                jsonArray = (JsonArray) RequesterSso.apiGetRequest("courses/"+course_id+"/enrollments?type[]=StudentEnrollment");
-                if (jsonArray != null) {
-                    for (JsonAbstractValue obj:jsonArray) {
-                        if (obj.getValue("enrollment_state").equalsIgnoreCase("active")) add(
-                                new StudentTableData(
-                                        obj.getValue("user_id"),
-                                        obj.getValue("user.sortable_name")
-                                ));
-                    }
+            try (CanvasPages<JsonObject> enrollments = CanvasPages.objects("courses/"+course_id+"/enrollments?type[]=StudentEnrollment", null)) {
+                for (JsonObject obj:enrollments) {
+                    if (obj.getValue("enrollment_state").equalsIgnoreCase("active")) add(
+                            new StudentTableData(
+                                    obj.getValue("user_id"),
+                                    obj.getValue("user.sortable_name")
+                            ));
                 }
-            } catch (IOException ex) {
+            } catch (UncheckedIOException ex) {
                 Logger.getLogger(Assignments.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
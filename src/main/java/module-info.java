@@ -4,6 +4,9 @@ module edu.asu.dlsandy.canvas_ore {
     requires transitive javafx.web;
     requires transitive javafx.graphics;
     requires java.logging;
+    requires java.net.http;
+    requires jdk.httpserver;
+    requires jdk.jfr;
     requires org.apache.poi.poi;
     requires org.apache.poi.ooxml;
 